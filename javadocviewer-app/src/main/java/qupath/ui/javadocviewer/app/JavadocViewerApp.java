@@ -1,51 +1,103 @@
 package qupath.ui.javadocviewer.app;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import qupath.ui.javadocviewer.core.Javadoc;
+import qupath.ui.javadocviewer.core.JavadocIndexBundle;
+import qupath.ui.javadocviewer.core.JavadocMirror;
+import qupath.ui.javadocviewer.core.JavadocRegistry;
+import qupath.ui.javadocviewer.core.JavadocsFinder;
+import qupath.ui.javadocviewer.core.MirroredFetcher;
 import qupath.ui.javadocviewer.gui.viewer.JavadocViewer;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
 
 /**
  * An application that starts a {@link JavadocViewer}.
+ * <p>
+ * It can also be used without any UI to create an index bundle (see {@link JavadocIndexBundle})
+ * of some Javadocs.
  */
 public class JavadocViewerApp extends Application {
 
     private static final Logger logger = LoggerFactory.getLogger(JavadocViewerApp.class);
+    private static final String BUILD_INDEX_PARAMETER = "build-index";
+    private static final String INDEX_PARAMETER = "index";
+    private static final String MIRROR_PARAMETER = "mirror";
+    private static final String EXIT_AFTER_STARTUP_PARAMETER = "--exit-after-startup";
+    private static final long MIRROR_MAX_BYTES = 1L << 30;
+    private static final String MIRROR_SEPARATOR = "\\|";
+    private JavadocViewer javadocViewer;
+    private JavadocMirror mirror;
 
     /**
      * Start the Javadoc viewer.
      *
      * @param args  URIs to search for Javadocs, for example local jars or directories, or
      *              HTTP URLs. They must have a defined scheme (for example file:///path/to/some/jar.jar
-     *              instead of /path/to/some/jar.jar)
+     *              instead of /path/to/some/jar.jar). Mirrors of a remote Javadoc can be given by
+     *              separating their URIs with {@code |} (for example
+     *              {@code https://host1/docs/index.html|https://host2/docs/index.html}): pages are then
+     *              fetched from the other mirrors when the first one is slow or unavailable
+     *              (see {@link MirroredFetcher}).
+     *              <p>
+     *              If one argument is {@code --index=/path/to/bundle}, the elements of the Javadocs
+     *              contained in this index bundle are read from the bundle instead of being parsed.
+     *              <p>
+     *              If one argument is {@code --mirror=/path/to/directory}, remote Javadoc pages are browsed
+     *              through a {@link JavadocMirror} storing them in the provided directory.
+     *              <p>
+     *              If one argument is {@code --build-index=/path/to/bundle}, no window is shown. Instead,
+     *              the Javadocs found in the provided URIs are parsed and written to an index bundle
+     *              at the provided path
+     *              <p>
+     *              If one argument is {@code --exit-after-startup}, the application logs the time elapsed between
+     *              the start of the JVM and the display of the window, and then exits. This is used to train
+     *              the class data sharing archive of the launcher and to measure startup time
      */
     public static void main(String[] args) {
-        Application.launch(JavadocViewerApp.class, args);
+        String buildIndexPrefix = String.format("--%s=", BUILD_INDEX_PARAMETER);
+        List<String> buildIndexArgs = Arrays.stream(args).filter(arg -> arg.startsWith(buildIndexPrefix)).toList();
+
+        if (buildIndexArgs.isEmpty()) {
+            Application.launch(JavadocViewerApp.class, args);
+        } else {
+            buildIndexBundle(
+                    Paths.get(buildIndexArgs.getLast().substring(buildIndexPrefix.length())),
+                    parseUris(Arrays.stream(args).filter(arg -> !arg.startsWith("--")).toList())
+            );
+        }
     }
 
     @Override
     public void start(Stage stage) throws IOException {
-        JavadocViewer javadocViewer = new JavadocViewer(
+        String indexBundle = getParameters().getNamed().get(INDEX_PARAMETER);
+        String mirrorDirectory = getParameters().getNamed().get(MIRROR_PARAMETER);
+
+        javadocViewer = new JavadocViewer(
                 null,
-                getParameters().getRaw().stream().
-                        map(param -> {
-                            try {
-                                return new URI(param);
-                            } catch (URISyntaxException e) {
-                                logger.warn(String.format("Couldn't convert URI %s", param), e);
-                                return null;
-                            }
-                        })
-                        .filter(Objects::nonNull)
-                        .toArray(URI[]::new)
+                indexBundle == null ? null : Paths.get(indexBundle),
+                parseUris(getParameters().getUnnamed().stream().filter(arg -> !arg.startsWith("--")).toList())
         );
+        if (mirrorDirectory != null) {
+            mirror = new JavadocMirror(Paths.get(mirrorDirectory), MIRROR_MAX_BYTES);
+            javadocViewer.setMirror(mirror);
+        }
 
         Scene scene = new Scene(javadocViewer);
         stage.setScene(scene);
@@ -53,5 +105,71 @@ public class JavadocViewerApp extends Application {
 
         stage.setMinWidth(javadocViewer.getWidth());
         stage.setMinHeight(javadocViewer.getHeight());
+
+        if (getParameters().getRaw().contains(EXIT_AFTER_STARTUP_PARAMETER)) {
+            // Runs after the pulse rendering the first frame of the window
+            Platform.runLater(() -> {
+                ProcessHandle.current().info().startInstant().ifPresent(start -> logger.info(
+                        "Window shown {} ms after the start of the JVM",
+                        Duration.between(start, Instant.now()).toMillis()
+                ));
+                Platform.exit();
+            });
+        }
+    }
+
+    @Override
+    public void stop() throws IOException {
+        if (javadocViewer != null) {
+            javadocViewer.close();
+        }
+        JavadocRegistry.getInstance().close();
+        if (mirror != null) {
+            mirror.close();
+        }
+    }
+
+    private static void buildIndexBundle(Path output, URI[] urisToSearch) {
+        logger.info("Building index bundle of the Javadocs found in {}...", Arrays.toString(urisToSearch));
+
+        try {
+            List<Javadoc> javadocs = JavadocsFinder.findJavadocs(urisToSearch).get();
+            JavadocIndexBundle.write(output, javadocs);
+
+            logger.info(
+                    "Index bundle with {} Javadocs and {} elements written to {}",
+                    javadocs.size(),
+                    javadocs.stream().mapToInt(javadoc -> javadoc.elements().size()).sum(),
+                    output
+            );
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.error("Cannot build index bundle {}", output, e);
+            System.exit(1);
+        }
+    }
+
+    private static URI[] parseUris(List<String> parameters) {
+        return parameters.stream()
+                .map(param -> {
+                    try {
+                        List<URI> mirrors = new ArrayList<>();
+                        for (String mirror: param.split(MIRROR_SEPARATOR)) {
+                            mirrors.add(new URI(mirror));
+                        }
+
+                        if (mirrors.size() > 1) {
+                            MirroredFetcher.getInstance().addMirrors(mirrors.getFirst(), mirrors.subList(1, mirrors.size()));
+                        }
+                        return mirrors.getFirst();
+                    } catch (URISyntaxException e) {
+                        logger.warn(String.format("Couldn't convert URI %s", param), e);
+                        return null;
+                    }
+                })
+                .filter(Objects::nonNull)
+                .toArray(URI[]::new);
     }
-}
\ No newline at end of file
+}
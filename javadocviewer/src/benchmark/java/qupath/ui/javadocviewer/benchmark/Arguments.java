@@ -0,0 +1,41 @@
+package qupath.ui.javadocviewer.benchmark;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Utility functions to read command line arguments of the form {@code --name=value} or {@code --name}.
+ */
+class Arguments {
+
+    private Arguments() {
+        throw new AssertionError("This class is not instantiable.");
+    }
+
+    /**
+     * Get the value of an argument.
+     *
+     * @param args the command line arguments
+     * @param name the name of the argument, without the leading dashes
+     * @return the value of the last argument with the provided name, or an empty Optional if there is no such argument
+     */
+    public static Optional<String> get(String[] args, String name) {
+        String prefix = String.format("--%s=", name);
+
+        return Arrays.stream(args)
+                .filter(arg -> arg.startsWith(prefix))
+                .map(arg -> arg.substring(prefix.length()))
+                .reduce((first, second) -> second);
+    }
+
+    /**
+     * Indicate whether a flag is present.
+     *
+     * @param args the command line arguments
+     * @param name the name of the flag, without the leading dashes
+     * @return whether the provided flag is present
+     */
+    public static boolean has(String[] args, String name) {
+        return Arrays.asList(args).contains("--" + name);
+    }
+}
@@ -0,0 +1,207 @@
+package qupath.ui.javadocviewer.benchmark;
+
+import qupath.ui.javadocviewer.core.Javadoc;
+import qupath.ui.javadocviewer.core.JavadocsFinder;
+import qupath.ui.javadocviewer.gui.components.AutoCompletionTextField;
+import qupath.ui.javadocviewer.gui.components.SuggestionSearch;
+import qupath.ui.javadocviewer.gui.components.SuggestionSearchCache;
+import qupath.ui.javadocviewer.gui.components.SuggestionStore;
+import qupath.ui.javadocviewer.gui.viewer.JavadocEntry;
+import qupath.ui.javadocviewer.gui.viewer.JavadocViewer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * An end-to-end benchmark of the latencies of the viewer on a large {@link SyntheticJavadoc}.
+ * <p>
+ * The benchmark measures the time needed to find Javadocs ({@link JavadocsFinder}), to read a Javadoc from
+ * a directory and from a jar ({@link Javadoc}), to add its elements to the search field, and to search
+ * for some text each time a key is typed. It doesn't need the JavaFX toolkit, so it can run headless.
+ * <p>
+ * The measured latencies are compared to budgets stored in {@code budgets.properties}. The program exits
+ * with a non-zero status if a budget is exceeded, so that performance regressions can be detected.
+ */
+public class LatencyBenchmark {
+
+    private static final String BUDGETS_RESOURCE = "budgets.properties";
+    private static final String BUDGET_SUFFIX = ".millis";
+    private static final int WARM_UP_RUNS = 1;
+    private static final int RUNS = 3;
+    private static final int NUMBER_OF_QUERIES = 50;
+    private static final int MAX_TYPED_CHARACTERS = 8;
+
+    private LatencyBenchmark() {
+        throw new AssertionError("This class is not instantiable.");
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args {@code --elements=<number>} to override the number of elements of the budgets file,
+     *             {@code --budgets=<path>} to use another budgets file, {@code --budget-factor=<number>} to
+     *             multiply all budgets (for example on slower or shared machines), and {@code --work-dir=<directory>}
+     *             to choose where the synthetic Javadocs are written (a temporary directory by default)
+     * @throws Exception if the benchmark cannot be run
+     */
+    public static void main(String[] args) throws Exception {
+        Properties budgets = readBudgets(Arguments.get(args, "budgets").map(Path::of).orElse(null));
+        int numberOfElements = Integer.parseInt(Arguments.get(args, "elements").orElse(budgets.getProperty("elements")));
+        double budgetFactor = Double.parseDouble(Arguments.get(args, "budget-factor").orElse("1"));
+        Path workDirectory = Arguments.get(args, "work-dir").isPresent() ?
+                Path.of(Arguments.get(args, "work-dir").get()) :
+                Files.createTempDirectory("javadoc-benchmark");
+
+        SyntheticJavadoc syntheticJavadoc = new SyntheticJavadoc(SyntheticJavadoc.Options.realistic(numberOfElements));
+        Path corpus = workDirectory.resolve("corpus");
+        Path directoryIndex = syntheticJavadoc.writeDirectory(corpus.resolve("synthetic").resolve("docs"));
+        Path jar = syntheticJavadoc.writeJar(corpus.resolve("libs").resolve("synthetic-javadoc.jar"));
+        URI jarIndex = URI.create(String.format("jar:%s!/index.html", jar.toUri()));
+        System.out.printf("Synthetic Javadoc with %d elements written to %s%n", syntheticJavadoc.getNumberOfElements(), corpus);
+
+        Map<String, Double> latencies = new LinkedHashMap<>();
+        latencies.put("discovery", measureMillis(() -> JavadocsFinder.findJavadocUris(JavadocsFinder.getDefaultExecutor(), corpus.toUri()).get()));
+        latencies.put("load.directory", measureMillis(() -> readJavadoc(directoryIndex.toUri())));
+        latencies.put("load.jar", measureMillis(() -> readJavadoc(jarIndex)));
+
+        Javadoc javadoc = readJavadoc(directoryIndex.toUri());
+        SuggestionStore<JavadocEntry> store = new SuggestionStore<>();
+        latencies.put("index", measureMillis(() -> {
+            store.put(
+                    javadoc.uri(),
+                    JavadocEntry.createEntries(javadoc.elements(), javadocElement -> {}, JavadocsFinder.getDefaultExecutor()).get()
+            );
+            return null;
+        }));
+
+        // Each run types the same queries with an empty query cache, and the median of each percentile is kept,
+        // so that a single pause of the JVM doesn't decide the result
+        List<double[]> keystrokeRuns = new ArrayList<>();
+        for (int i=0; i<RUNS; i++) {
+            keystrokeRuns.add(measureKeystrokes(store, syntheticJavadoc.getSampleNames(NUMBER_OF_QUERIES)));
+        }
+        latencies.put("search.keystroke.p50", median(keystrokeRuns, run -> percentile(run, 0.5)));
+        latencies.put("search.keystroke.p95", median(keystrokeRuns, run -> percentile(run, 0.95)));
+        latencies.put("search.keystroke.max", median(keystrokeRuns, run -> run[run.length - 1]));
+
+        System.out.printf(
+                "%d elements read, %d searches made in each of %d runs%n",
+                javadoc.elements().size(),
+                keystrokeRuns.getFirst().length,
+                RUNS
+        );
+        if (!report(latencies, budgets, budgetFactor)) {
+            System.exit(1);
+        }
+    }
+
+    private static Javadoc readJavadoc(URI uri) throws Exception {
+        return Javadoc.create(uri, JavadocViewer.PARSE_OPTIONS, JavadocsFinder.getDefaultExecutor()).get();
+    }
+
+    private static double measureMillis(Callable<?> task) throws Exception {
+        for (int i=0; i<WARM_UP_RUNS; i++) {
+            task.call();
+        }
+
+        double[] durations = new double[RUNS];
+        for (int i=0; i<RUNS; i++) {
+            long start = System.nanoTime();
+            task.call();
+            durations[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(durations);
+        return durations[RUNS / 2];
+    }
+
+    private static double[] measureKeystrokes(SuggestionStore<JavadocEntry> store, List<String> names) {
+        // The first query warms up the search. Another cache is used so that its search is not cached
+        measureSearch(AutoCompletionTextField.createSearchCache(store), names.getFirst().substring(0, 1).toLowerCase());
+
+        SuggestionSearchCache<JavadocEntry> searchCache = AutoCompletionTextField.createSearchCache(store);
+        List<Double> latencies = new ArrayList<>();
+        for (String name: names) {
+            for (int i=1; i<=Math.min(name.length(), MAX_TYPED_CHARACTERS); i++) {
+                latencies.add(measureSearch(searchCache, name.substring(0, i).toLowerCase()) / 1e6);
+            }
+        }
+        System.out.printf("Query cache hit rate: %.2f%n", searchCache.getHitRate());
+        return latencies.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+    }
+
+    private static long measureSearch(SuggestionSearchCache<JavadocEntry> searchCache, String loweredCaseText) {
+        // Like a text field when a key is typed: the search is retrieved from the cache or computed, the first
+        // page of matches is retrieved, the text field checks whether there are more matches, and the number
+        // of matches is computed
+        long start = System.nanoTime();
+
+        SuggestionSearch<JavadocEntry> search = searchCache.getSearch(loweredCaseText);
+        int numberOfDisplayedMatches = search.getMatches(0, AutoCompletionTextField.MAX_ENTRIES).size();
+        if (numberOfDisplayedMatches > 0 && search.hasMatchesAfter(numberOfDisplayedMatches - 1)) {
+            search.getMatchCount();
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private static double median(List<double[]> runs, ToDoubleFunction<double[]> measure) {
+        double[] values = runs.stream().mapToDouble(measure).sorted().toArray();
+        return values[values.length / 2];
+    }
+
+    private static double percentile(double[] sortedValues, double percentile) {
+        return sortedValues[(int) Math.min(sortedValues.length - 1, Math.ceil(percentile * sortedValues.length) - 1)];
+    }
+
+    private static boolean report(Map<String, Double> latencies, Properties budgets, double budgetFactor) {
+        boolean withinBudgets = true;
+
+        System.out.printf("%-24s %12s %12s%n", "Measure", "Latency (ms)", "Budget (ms)");
+        for (Map.Entry<String, Double> latency: latencies.entrySet()) {
+            String budgetProperty = budgets.getProperty(latency.getKey() + BUDGET_SUFFIX);
+            Double budget = budgetProperty == null ? null : Double.parseDouble(budgetProperty) * budgetFactor;
+            boolean exceeded = budget != null && latency.getValue() > budget;
+
+            System.out.printf(
+                    "%-24s %12.2f %12s%s%n",
+                    latency.getKey(),
+                    latency.getValue(),
+                    budget == null ? "-" : String.format("%.1f", budget),
+                    exceeded ? "   EXCEEDED" : ""
+            );
+            withinBudgets &= !exceeded;
+        }
+        return withinBudgets;
+    }
+
+    private static Properties readBudgets(Path path) throws IOException {
+        Properties budgets = new Properties();
+
+        if (path == null) {
+            try (InputStream inputStream = LatencyBenchmark.class.getResourceAsStream(BUDGETS_RESOURCE)) {
+                if (inputStream == null) {
+                    throw new IOException(String.format("Resource %s not found", BUDGETS_RESOURCE));
+                }
+                budgets.load(inputStream);
+            }
+        } else {
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                budgets.load(reader);
+            }
+        }
+        return budgets;
+    }
+}
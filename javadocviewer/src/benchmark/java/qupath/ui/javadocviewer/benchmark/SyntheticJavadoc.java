@@ -0,0 +1,388 @@
+package qupath.ui.javadocviewer.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A generator of synthetic Javadocs, used to measure the performance of the viewer on large Javadocs
+ * without depending on real libraries.
+ * <p>
+ * The generated Javadocs look like the output of the javadoc tool of JDK 17+: an index page, an
+ * {@code index-all.html} page listing all elements, search index files, an element list, and one
+ * page per class. Names are made of common Java words, and the number of members per class follows
+ * a heavy-tailed distribution (most classes are small, a few are very large), like in real libraries.
+ * <p>
+ * The same options always produce the same Javadoc.
+ */
+public class SyntheticJavadoc {
+
+    private static final String[] WORDS = {
+            "image", "server", "pixel", "type", "path", "object", "roi", "hierarchy", "measurement", "channel",
+            "color", "transform", "region", "request", "tile", "cache", "plane", "metadata", "builder", "reader",
+            "writer", "listener", "event", "model", "view", "command", "script", "project", "entry", "annotation",
+            "detection", "cell", "classifier", "feature", "table", "stream", "buffer", "value", "label", "shape",
+            "geometry", "point", "polygon", "ellipse", "line", "area", "scale", "resolution", "stain", "vector"
+    };
+    private static final String[] VERBS = {
+            "get", "set", "is", "create", "update", "add", "remove", "find", "read", "write", "compute", "to", "with", "has"
+    };
+    private static final String[] PARAMETER_TYPES = {
+            "int", "double", "boolean", "long", "java.lang.String", "java.util.List", "java.util.Map", "java.lang.Object"
+    };
+    private static final String JAVADOC_MARKER = "<!-- Generated by javadoc -->";
+    private final Options options;
+    private final List<ClassSpec> classes;
+    private record ClassSpec(String packageName, String name, String kind, List<MemberSpec> members) {}
+    private record MemberSpec(String name, String category, String parameters) {}
+
+    /**
+     * Options of a synthetic Javadoc.
+     *
+     * @param numberOfElements the approximate number of elements (classes and members) of the Javadoc
+     * @param classesPerPackage the average number of classes per package
+     * @param memberSkew how unevenly members are distributed between classes. 0 gives the same number of members
+     *                   to all classes, and higher values give more members to a few classes. Real libraries
+     *                   are close to 1
+     * @param seed the seed of the random generator
+     */
+    public record Options(int numberOfElements, int classesPerPackage, double memberSkew, long seed) {
+
+        /**
+         * Options producing a Javadoc of the provided size with a realistic distribution of names.
+         *
+         * @param numberOfElements the approximate number of elements of the Javadoc
+         * @return options producing a realistic Javadoc of the provided size
+         */
+        public static Options realistic(int numberOfElements) {
+            return new Options(numberOfElements, 25, 1, 42);
+        }
+    }
+
+    /**
+     * Generate the elements of a synthetic Javadoc. Nothing is written until one of the write functions is called.
+     *
+     * @param options the options of the Javadoc
+     * @throws IllegalArgumentException if the number of elements or the number of classes per package is less than 1
+     */
+    public SyntheticJavadoc(Options options) {
+        if (options.numberOfElements() < 1 || options.classesPerPackage() < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "The number of elements (%d) and the number of classes per package (%d) must be at least 1",
+                    options.numberOfElements(),
+                    options.classesPerPackage()
+            ));
+        }
+
+        this.options = options;
+        this.classes = generateClasses(options);
+    }
+
+    /**
+     * Generate a synthetic Javadoc from the command line.
+     *
+     * @param args {@code --elements=<number>} (200000 by default), {@code --output=<directory>} (required),
+     *             and {@code --jar} to write a Javadoc jar instead of a directory
+     * @throws IOException if the Javadoc cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        int numberOfElements = Integer.parseInt(Arguments.get(args, "elements").orElse("200000"));
+        Path output = Path.of(Arguments.get(args, "output").orElseThrow(() -> new IllegalArgumentException("--output=<directory> is required")));
+        SyntheticJavadoc javadoc = new SyntheticJavadoc(Options.realistic(numberOfElements));
+
+        Path index = Arguments.has(args, "jar") ?
+                javadoc.writeJar(output.resolve("synthetic-javadoc.jar")) :
+                javadoc.writeDirectory(output.resolve("docs"));
+        System.out.printf("Javadoc with %d elements written to %s%n", javadoc.getNumberOfElements(), index);
+    }
+
+    /**
+     * @return the number of elements (classes and members) of this Javadoc
+     */
+    public int getNumberOfElements() {
+        return classes.stream().mapToInt(classSpec -> 1 + classSpec.members().size()).sum();
+    }
+
+    /**
+     * Get the names of some elements of this Javadoc, for example to search for them.
+     *
+     * @param count the number of names to return
+     * @return the simple names of count elements (classes and members) chosen randomly
+     */
+    public List<String> getSampleNames(int count) {
+        Random random = new Random(options.seed() + 1);
+        List<String> names = new ArrayList<>();
+
+        for (int i=0; i<count; i++) {
+            ClassSpec classSpec = classes.get(random.nextInt(classes.size()));
+
+            if (classSpec.members().isEmpty() || random.nextBoolean()) {
+                names.add(classSpec.name());
+            } else {
+                names.add(classSpec.members().get(random.nextInt(classSpec.members().size())).name());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Write this Javadoc to a directory. Javadocs are only found by the {@link qupath.ui.javadocviewer.core.JavadocsFinder}
+     * in directories called "docs", "javadoc", or "javadocs".
+     *
+     * @param directory the directory to write the Javadoc to. It is created if it doesn't exist
+     * @return the path of the index page of the written Javadoc
+     * @throws IOException if the Javadoc cannot be written
+     */
+    public Path writeDirectory(Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        for (Page page: getPages()) {
+            Path path = directory.resolve(page.path());
+            Files.createDirectories(path.getParent());
+
+            try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                page.writer().write(writer);
+            }
+        }
+        return directory.resolve("index.html");
+    }
+
+    /**
+     * Write this Javadoc to a jar file. Javadoc jars are only found by the {@link qupath.ui.javadocviewer.core.JavadocsFinder}
+     * if their name ends with "javadoc.jar".
+     *
+     * @param jar the path of the jar to write. Its parent directory is created if it doesn't exist
+     * @return the path of the written jar
+     * @throws IOException if the Javadoc cannot be written
+     */
+    public Path writeJar(Path jar) throws IOException {
+        Files.createDirectories(jar.getParent());
+
+        try (ZipOutputStream outputStream = new ZipOutputStream(Files.newOutputStream(jar))) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+
+            for (Page page: getPages()) {
+                outputStream.putNextEntry(new ZipEntry(page.path()));
+                page.writer().write(writer);
+                writer.flush();
+                outputStream.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private interface PageWriter {
+        void write(Writer writer) throws IOException;
+    }
+
+    private record Page(String path, PageWriter writer) {}
+
+    private List<Page> getPages() {
+        List<Page> pages = new ArrayList<>(List.of(
+                new Page("index.html", this::writeIndexPage),
+                new Page("index-all.html", this::writeIndexAllPage),
+                new Page("element-list", this::writeElementList),
+                new Page("type-search-index.js", this::writeTypeSearchIndex),
+                new Page("member-search-index.js", this::writeMemberSearchIndex)
+        ));
+        for (ClassSpec classSpec: classes) {
+            pages.add(new Page(getClassPath(classSpec), writer -> writeClassPage(writer, classSpec)));
+        }
+        return pages;
+    }
+
+    private void writeIndexPage(Writer writer) throws IOException {
+        writer.write(String.format(
+                "<!DOCTYPE HTML>%n<html lang=\"en\">%n<head>%n%s%n<title>Synthetic API</title>%n</head>%n" +
+                        "<body>%n<a href=\"index-all.html\">Index</a>%n</body>%n</html>%n",
+                JAVADOC_MARKER
+        ));
+    }
+
+    private void writeIndexAllPage(Writer writer) throws IOException {
+        writer.write(String.format("<!DOCTYPE HTML>%n<html lang=\"en\">%n<head>%n%s%n<title>Index</title>%n</head>%n<body>%n<dl class=\"index\">%n", JAVADOC_MARKER));
+
+        List<String[]> entries = new ArrayList<>();
+        for (ClassSpec classSpec: classes) {
+            String classPath = getClassPath(classSpec);
+            String kind = classSpec.kind().toLowerCase();
+
+            entries.add(new String[] {classSpec.name(), String.format(
+                    "<dt><a href=\"%s\" class=\"type-name-link\" title=\"%s in %s\">%s</a> - %s in <a href=\"%s\">%s</a></dt>%n<dd>&nbsp;</dd>%n",
+                    classPath, kind, classSpec.packageName(), classSpec.name(), getCategoryName(classSpec.kind()),
+                    classSpec.packageName().replace('.', '/') + "/package-summary.html", classSpec.packageName()
+            )});
+
+            for (MemberSpec member: classSpec.members()) {
+                String anchor = member.category().equals("Constructor") ?
+                        "%3Cinit%3E(" + member.parameters() + ")" :
+                        member.name() + (member.category().equals("Variable") || member.category().equals("Enum Constant") ? "" : "(" + member.parameters() + ")");
+                String displayedName = member.category().equals("Variable") || member.category().equals("Enum Constant") ?
+                        member.name() :
+                        member.name() + "(" + member.parameters() + ")";
+                String description = switch (member.category()) {
+                    case "Constructor" -> "Constructor for " + kind;
+                    case "Static method" -> "Static method in " + kind;
+                    case "Variable" -> "Variable in " + kind;
+                    case "Enum Constant" -> "Enum Constant in enum";
+                    default -> "Method in " + kind;
+                };
+
+                entries.add(new String[] {member.name(), String.format(
+                        "<dt><a href=\"%s#%s\" class=\"member-name-link\">%s</a> - %s %s.<a href=\"%s\" title=\"%s in %s\">%s</a></dt>%n<dd>&nbsp;</dd>%n",
+                        classPath, anchor, displayedName, description, classSpec.packageName(), classPath, kind,
+                        classSpec.packageName(), classSpec.name()
+                )});
+            }
+        }
+
+        // Like the javadoc tool, elements are sorted by name (case-insensitive)
+        entries.sort(Comparator.comparing((String[] entry) -> entry[0].toLowerCase()));
+        for (String[] entry: entries) {
+            writer.write(entry[1]);
+        }
+
+        writer.write(String.format("</dl>%n</body>%n</html>%n"));
+    }
+
+    private void writeElementList(Writer writer) throws IOException {
+        for (String packageName: classes.stream().map(ClassSpec::packageName).distinct().sorted().toList()) {
+            writer.write(packageName);
+            writer.write('\n');
+        }
+    }
+
+    private void writeTypeSearchIndex(Writer writer) throws IOException {
+        writer.write("typeSearchIndex = [");
+        writer.write(classes.stream()
+                .map(classSpec -> String.format("{\"p\":\"%s\",\"l\":\"%s\"}", classSpec.packageName(), classSpec.name()))
+                .collect(Collectors.joining(","))
+        );
+        writer.write("];updateSearchResults();");
+    }
+
+    private void writeMemberSearchIndex(Writer writer) throws IOException {
+        writer.write("memberSearchIndex = [");
+        boolean first = true;
+        for (ClassSpec classSpec: classes) {
+            for (MemberSpec member: classSpec.members()) {
+                if (!first) {
+                    writer.write(',');
+                }
+                first = false;
+
+                writer.write(String.format(
+                        "{\"p\":\"%s\",\"c\":\"%s\",\"l\":\"%s(%s)\"}",
+                        classSpec.packageName(),
+                        classSpec.name(),
+                        member.name(),
+                        member.parameters()
+                ));
+            }
+        }
+        writer.write("];updateSearchResults();");
+    }
+
+    private static void writeClassPage(Writer writer, ClassSpec classSpec) throws IOException {
+        writer.write(String.format(
+                "<!DOCTYPE HTML>%n<html lang=\"en\">%n<head>%n%s%n<title>%s</title>%n</head>%n<body>%n<h1>%s %s</h1>%n<ul>%n",
+                JAVADOC_MARKER,
+                classSpec.name(),
+                getCategoryName(classSpec.kind()),
+                classSpec.name()
+        ));
+        for (MemberSpec member: classSpec.members()) {
+            writer.write(String.format("<li id=\"%s\">%s</li>%n", member.name(), member.name()));
+        }
+        writer.write(String.format("</ul>%n</body>%n</html>%n"));
+    }
+
+    private static String getClassPath(ClassSpec classSpec) {
+        return classSpec.packageName().replace('.', '/') + "/" + classSpec.name() + ".html";
+    }
+
+    private static String getCategoryName(String kind) {
+        return kind.equals("Enum") ? "Enum Class" : kind;
+    }
+
+    private static List<ClassSpec> generateClasses(Options options) {
+        Random random = new Random(options.seed());
+        List<ClassSpec> classes = new ArrayList<>();
+
+        int numberOfElements = 0;
+        String packageName = createPackageName(random);
+        while (numberOfElements < options.numberOfElements()) {
+            if (classes.size() % options.classesPerPackage() == 0) {
+                packageName = createPackageName(random);
+            }
+
+            String kind = pick(random, "Class", "Class", "Class", "Interface", "Enum");
+            String name = capitalize(WORDS[random.nextInt(WORDS.length)]) + capitalize(WORDS[random.nextInt(WORDS.length)]) +
+                    (kind.equals("Interface") ? "" : pick(random, "", "", "Builder", "Impl", "Utils", "Factory", "Helper")) +
+                    classes.size();
+
+            // Pareto-distributed number of members, with a mean of about 20
+            double uniform = 1 - random.nextDouble();
+            int maxMembers = Math.max(0, options.numberOfElements() - numberOfElements - 1);
+            int numberOfMembers = (int) Math.min(
+                    maxMembers,
+                    options.memberSkew() == 0 ? 20 : Math.round(20 * (1 - 1 / (1 + options.memberSkew())) / Math.pow(uniform, 1 / (1 + options.memberSkew())))
+            );
+
+            List<MemberSpec> members = new ArrayList<>();
+            for (int i=0; i<numberOfMembers; i++) {
+                members.add(createMember(random, kind, name));
+            }
+
+            classes.add(new ClassSpec(packageName, name, kind, List.copyOf(members)));
+            numberOfElements += 1 + members.size();
+        }
+        return List.copyOf(classes);
+    }
+
+    private static MemberSpec createMember(Random random, String kind, String className) {
+        String category = kind.equals("Enum") ?
+                pick(random, "Enum Constant", "Method", "Static method") :
+                pick(random, "Method", "Method", "Method", "Method", "Method", "Method", "Static method", "Constructor", "Variable");
+
+        String name = switch (category) {
+            case "Constructor" -> className;
+            case "Variable", "Enum Constant" -> (WORDS[random.nextInt(WORDS.length)] + "_" + WORDS[random.nextInt(WORDS.length)]).toUpperCase();
+            default -> VERBS[random.nextInt(VERBS.length)] + capitalize(WORDS[random.nextInt(WORDS.length)]) +
+                    (random.nextBoolean() ? capitalize(WORDS[random.nextInt(WORDS.length)]) : "");
+        };
+
+        List<String> parameters = new ArrayList<>();
+        for (int i=0; i<random.nextInt(4); i++) {
+            parameters.add(PARAMETER_TYPES[random.nextInt(PARAMETER_TYPES.length)]);
+        }
+        return new MemberSpec(name, category, String.join(",", parameters));
+    }
+
+    private static String createPackageName(Random random) {
+        List<String> segments = new ArrayList<>(List.of("synthetic"));
+        for (int i=0; i<2+random.nextInt(3); i++) {
+            segments.add(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return String.join(".", segments);
+    }
+
+    private static String pick(Random random, String... values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
@@ -4,9 +4,12 @@
  * search feature across all Javadocs.
  */
 module qupath.ui.javadocviewer {
+    exports qupath.ui.javadocviewer.core;
+    exports qupath.ui.javadocviewer.gui.components;
     exports qupath.ui.javadocviewer.gui.viewer;
     requires org.slf4j;
     requires java.net.http;
+    requires jdk.httpserver;
     requires javafx.graphics;
     requires javafx.controls;
     requires javafx.fxml;
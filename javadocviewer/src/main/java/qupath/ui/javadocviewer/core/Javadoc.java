@@ -7,18 +7,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.time.Duration;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -29,6 +27,7 @@ import java.util.zip.ZipFile;
 /**
  * A Javadoc specified by a {@link URI} and containing {@link JavadocElement JavadocElements}.
  * Elements are populated by looking at the {@link #INDEX_ALL_PAGE} page of the Javadoc.
+ * Large index pages are split into chunks parsed in parallel by the executor given to {@link #create(URI, Executor)}.
  *
  * @param uri the URI of this Javadoc
  * @param elements an unmodifiable view of the elements of this Javadoc
@@ -42,7 +41,10 @@ public record Javadoc(URI uri, List<JavadocElement> elements) {
     private static final Pattern URI_PATTERN = Pattern.compile("href=\"(.+?)\"");
     private static final Pattern NAME_PATTERN = Pattern.compile("<a .*?>(?:<span .*?>)?(.*?)(?:</span>)?</a>");
     private static final Pattern CATEGORY_PATTERN = Pattern.compile("</a> - (.+?) ");
-    private static final int REQUEST_TIMEOUT_SECONDS = 10;
+    private static final String ENTRY_START = "<dt>";
+    private static final int PARALLEL_PARSING_THRESHOLD = 1 << 20;
+    private static final int MIN_CHUNK_SIZE = 1 << 18;
+    private static final int CHUNKS_PER_THREAD = 4;
 
     /**
      * Create a Javadoc from a URI and Javadoc elements. Take a look at {@link #create(URI)}
@@ -61,21 +63,49 @@ public record Javadoc(URI uri, List<JavadocElement> elements) {
      * <p>
      * Note that exception handling is left to the caller (the returned CompletableFuture may
      * complete exceptionally if the elements of the Javadocs cannot be retrieved for example).
+     * This uses the {@link JavadocsFinder#getDefaultExecutor() default executor}.
      *
      * @param uri the URI of the Javadoc
      * @return a CompletableFuture (that may complete exceptionally) with the created Javadoc
      */
     public static CompletableFuture<Javadoc> create(URI uri) {
-        return getIndexAllPage(uri).thenApply(indexAllPage -> new Javadoc(
-                uri,
-                parseJavadocIndexPage(
-                        uri.toString().substring(0, uri.toString().lastIndexOf('/') + 1),
-                        indexAllPage
-                )
-        ));
+        return create(uri, JavadocsFinder.getDefaultExecutor());
     }
 
-    private static CompletableFuture<String> getIndexAllPage(URI javadocIndexURI) {
+    /**
+     * Asynchronously attempt to create a Javadoc from the specified URI, using
+     * the provided executor to read and parse the index page of the Javadoc.
+     * <p>
+     * Note that exception handling is left to the caller (the returned CompletableFuture may
+     * complete exceptionally if the elements of the Javadocs cannot be retrieved for example).
+     * Cancelling the returned CompletableFuture aborts the download of the index page or interrupts
+     * its parsing.
+     *
+     * @param uri the URI of the Javadoc
+     * @param executor the executor to use to read and parse the index page
+     * @return a CompletableFuture (that may complete exceptionally) with the created Javadoc
+     */
+    public static CompletableFuture<Javadoc> create(URI uri, Executor executor) {
+        return create(uri, JavadocParseOptions.ALL_ELEMENTS, executor);
+    }
+
+    /**
+     * Asynchronously attempt to create a Javadoc from the specified URI, only keeping the elements
+     * accepted by the provided options. See {@link #create(URI, Executor)} for more information.
+     *
+     * @param uri the URI of the Javadoc
+     * @param options the options restricting the elements to read. They are applied while the index page is parsed
+     * @param executor the executor to use to read and parse the index page
+     * @return a CompletableFuture (that may complete exceptionally) with the created Javadoc
+     */
+    public static CompletableFuture<Javadoc> create(URI uri, JavadocParseOptions options, Executor executor) {
+        return Utils.composeCancellable(
+                getIndexAllPage(uri, executor),
+                indexAllPage -> parseJavadocIndexPage(uri, indexAllPage, options, executor)
+        );
+    }
+
+    private static CompletableFuture<String> getIndexAllPage(URI javadocIndexURI, Executor executor) {
         String link = javadocIndexURI.toString().replace(INDEX_PAGE, INDEX_ALL_PAGE);
         URI indexAllURI;
         try {
@@ -87,48 +117,152 @@ public record Javadoc(URI uri, List<JavadocElement> elements) {
         if (Utils.doesUrilinkToWebsite(indexAllURI)) {
             return getIndexAllPageContentFromHttp(indexAllURI);
         } else {
-            return CompletableFuture.supplyAsync(() -> {
+            return Utils.supplyAsyncInterruptibly(() -> {
                 if (indexAllURI.getScheme().contains("jar")) {
                     return getIndexAllPageContentFromJar(indexAllURI);
                 } else {
                     return getIndexAllPageContentFromNonJar(indexAllURI);
                 }
+            }, executor);
+        }
+    }
+
+    private static CompletableFuture<Javadoc> parseJavadocIndexPage(
+            URI uri,
+            String indexHTMLPage,
+            JavadocParseOptions options,
+            Executor executor
+    ) {
+        String javadocURI = uri.toString().substring(0, uri.toString().lastIndexOf('/') + 1);
+
+        // Splitting the page is not worth it for small pages or if only one core is available.
+        // If the number of elements is limited, the sequential parsing can stop as soon as the limit is reached
+        if (indexHTMLPage.length() < PARALLEL_PARSING_THRESHOLD ||
+                Runtime.getRuntime().availableProcessors() < 2 ||
+                options.maxElements() < Integer.MAX_VALUE
+        ) {
+            return Utils.supplyAsyncInterruptibly(
+                    () -> new Javadoc(uri, parseJavadocIndexPage(javadocURI, indexHTMLPage, options, 0, indexHTMLPage.length())),
+                    executor
+            );
+        }
+
+        List<Integer> chunkBoundaries = getChunkBoundaries(indexHTMLPage);
+        logger.debug(
+                "{} characters to parse in {}. Parsing them in {} chunks",
+                indexHTMLPage.length(),
+                javadocURI,
+                chunkBoundaries.size() - 1
+        );
+
+        // The chunks are submitted to the executor as independent tasks, so that its number of threads bounds
+        // the parallelism and no thread of the executor is blocked waiting for other chunks
+        List<CompletableFuture<List<JavadocElement>>> chunks = new ArrayList<>();
+        for (int i=0; i<chunkBoundaries.size()-1; i++) {
+            int start = chunkBoundaries.get(i);
+            int end = chunkBoundaries.get(i+1);
+            chunks.add(Utils.supplyAsyncInterruptibly(
+                    () -> parseJavadocIndexPage(javadocURI, indexHTMLPage, options, start, end),
+                    executor
+            ));
+        }
+
+        CompletableFuture<Javadoc> javadoc = CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<JavadocElement> elements = new ArrayList<>();
+            for (CompletableFuture<List<JavadocElement>> chunk: chunks) {
+                elements.addAll(chunk.join());
+            }
+            return new Javadoc(uri, elements);
+        });
+
+        // The first failing chunk fails the parsing, and a failed or cancelled parsing cancels the remaining chunks
+        for (CompletableFuture<List<JavadocElement>> chunk: chunks) {
+            chunk.whenComplete((elements, error) -> {
+                if (error != null) {
+                    javadoc.completeExceptionally(error);
+                }
             });
         }
+        javadoc.whenComplete((result, error) -> {
+            if (error != null) {
+                for (CompletableFuture<List<JavadocElement>> chunk: chunks) {
+                    chunk.cancel(true);
+                }
+            }
+        });
+        return javadoc;
     }
 
-    private static List<JavadocElement> parseJavadocIndexPage(String javadocURI, String indexHTMLPage) {
+    private static List<Integer> getChunkBoundaries(String indexHTMLPage) {
+        // Chunks start with an entry, so that no entry is split between two chunks
+        int chunkSize = Math.max(
+                MIN_CHUNK_SIZE,
+                indexHTMLPage.length() / (Runtime.getRuntime().availableProcessors() * CHUNKS_PER_THREAD)
+        );
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(0);
+
+        int entryIndex = indexHTMLPage.indexOf(ENTRY_START, chunkSize);
+        while (entryIndex > -1) {
+            boundaries.add(entryIndex);
+            entryIndex = indexHTMLPage.indexOf(ENTRY_START, entryIndex + chunkSize);
+        }
+        boundaries.add(indexHTMLPage.length());
+
+        return boundaries;
+    }
+
+    private static List<JavadocElement> parseJavadocIndexPage(
+            String javadocURI,
+            String indexHTMLPage,
+            JavadocParseOptions options,
+            int start,
+            int end
+    ) {
         List<JavadocElement> elements = new ArrayList<>();
-        Matcher entryMatcher = ENTRY_PATTERN.matcher(indexHTMLPage);
+        Predicate<String> nameFilter = options.createNameFilter();
+        Matcher entryMatcher = ENTRY_PATTERN.matcher(indexHTMLPage).region(start, end);
+        Matcher uriMatcher = URI_PATTERN.matcher(indexHTMLPage);
+        Matcher nameMatcher = NAME_PATTERN.matcher(indexHTMLPage);
+        Matcher categoryMatcher = CATEGORY_PATTERN.matcher(indexHTMLPage);
+
+        while (elements.size() < options.maxElements() && entryMatcher.find()) {
+            Utils.checkNotInterrupted(javadocURI);
+            if (entryMatcher.groupCount() == 0) {
+                continue;
+            }
 
-        while (entryMatcher.find()) {
-            if (entryMatcher.groupCount() > 0) {
-                Matcher uriMatcher = URI_PATTERN.matcher(entryMatcher.group(1));
-                Matcher nameMatcher = NAME_PATTERN.matcher(entryMatcher.group(1));
-                Matcher categoryMatcher = CATEGORY_PATTERN.matcher(entryMatcher.group(1));
+            // The category is checked first, so that nothing is allocated for skipped entries
+            categoryMatcher.region(entryMatcher.start(1), entryMatcher.end(1));
+            if (!categoryMatcher.find() || categoryMatcher.groupCount() == 0) {
+                continue;
+            }
+            String category = categoryMatcher.group(1);
+            if (!options.acceptsCategory(category)) {
+                continue;
+            }
 
-                if (uriMatcher.find() && uriMatcher.groupCount() > 0
-                        && nameMatcher.find() && nameMatcher.groupCount() > 0
-                        && categoryMatcher.find() && categoryMatcher.groupCount() > 0
-                ) {
-                    String name = nameMatcher.group(1).replace("&lt;", "<").replace("&gt;", ">");
-                    if (nameMatcher.find() && nameMatcher.groupCount() > 0) {
-                        name = nameMatcher.group(1) + "." + name;
-                    }
-                    String link = javadocURI + uriMatcher.group(1);
-                    String category = categoryMatcher.group(1);
-
-                    name = correctNameIfConstructor(name, category);
-
-                    try {
-                        elements.add(new JavadocElement(
-                                new URI(link),
-                                name,
-                                category
-                        ));
-                    } catch (URISyntaxException e) {
-                        logger.debug("Cannot create URI {} of Javadoc element", link, e);
-                    }
+            uriMatcher.region(entryMatcher.start(1), entryMatcher.end(1));
+            nameMatcher.region(entryMatcher.start(1), entryMatcher.end(1));
+            if (uriMatcher.find() && uriMatcher.groupCount() > 0 && nameMatcher.find() && nameMatcher.groupCount() > 0) {
+                String name = nameMatcher.group(1).replace("&lt;", "<").replace("&gt;", ">");
+                if (nameMatcher.find() && nameMatcher.groupCount() > 0) {
+                    name = nameMatcher.group(1) + "." + name;
+                }
+                name = correctNameIfConstructor(name, category);
+                if (!nameFilter.test(name)) {
+                    continue;
+                }
+
+                String link = javadocURI + uriMatcher.group(1);
+                try {
+                    elements.add(new JavadocElement(
+                            new URI(link),
+                            name,
+                            category
+                    ));
+                } catch (URISyntaxException e) {
+                    logger.debug("Cannot create URI {} of Javadoc element", link, e);
                 }
             }
         }
@@ -137,23 +271,20 @@ public record Javadoc(URI uri, List<JavadocElement> elements) {
     }
 
     private static CompletableFuture<String> getIndexAllPageContentFromHttp(URI uri) {
-        HttpClient httpClient = HttpClient.newBuilder()
-                .followRedirects(HttpClient.Redirect.ALWAYS)
-                .build();
-
-        logger.debug("Sending GET request to {} to read the index-all page content...", uri);
-
-        return httpClient.sendAsync(
-                HttpRequest.newBuilder()
-                        .uri(uri)
-                        .timeout(Duration.of(REQUEST_TIMEOUT_SECONDS, ChronoUnit.SECONDS))
-                        .GET()
-                        .build(),
-                HttpResponse.BodyHandlers.ofString()
-        ).thenApply(response -> {
-            logger.debug("Got response {} from {}", response, uri);
-            return response.body();
-        }).whenComplete((b, e) -> httpClient.close());
+        logger.debug("Fetching {} to read the index-all page content...", uri);
+
+        CompletableFuture<HttpResponse<String>> response = MirroredFetcher.getInstance().fetch(uri, HttpResponse.BodyHandlers.ofString());
+        CompletableFuture<String> body = response.thenApply(HttpResponse::body);
+
+        body.whenComplete((b, e) -> {
+            if (body.isCancelled()) {
+                logger.debug("Request to {} cancelled", uri);
+
+                // Cancelling the response aborts the pending requests
+                response.cancel(true);
+            }
+        });
+        return body;
     }
 
     private static String getIndexAllPageContentFromJar(URI uri) {
@@ -175,6 +306,7 @@ public record Javadoc(URI uri, List<JavadocElement> elements) {
                 ) {
                     StringBuilder lines = new StringBuilder();
                     while (scanner.hasNextLine()) {
+                        Utils.checkNotInterrupted(uri);
                         lines.append(scanner.nextLine());
                     }
                     return lines.toString();
@@ -189,7 +321,9 @@ public record Javadoc(URI uri, List<JavadocElement> elements) {
         logger.debug("Reading {} file to get the index-all page content...", uri);
 
         try (Stream<String> lines = Files.lines(Paths.get(uri))) {
-            return lines.collect(Collectors.joining("\n"));
+            return lines
+                    .peek(line -> Utils.checkNotInterrupted(uri))
+                    .collect(Collectors.joining("\n"));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,530 @@
+package qupath.ui.javadocviewer.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
+
+/**
+ * A store of {@link JavadocSymbolIndex indexed Javadocs} that keeps the elements of the Javadocs
+ * in memory within a heap budget.
+ * <p>
+ * When the estimated size of the Javadocs in memory exceeds the budget, the least recently used
+ * Javadocs are evicted: they are written to a temporary {@link JavadocIndexBundle}, and their elements
+ * are released. An evicted Javadoc is transparently read again from its bundle when it is requested with
+ * {@link #get(URI)}. The bundle is kept after that, so that evicting the Javadoc again doesn't write it again.
+ * Bundles are deleted when their Javadoc is replaced with {@link #add(JavadocSymbolIndex)}, and by {@link #clear()}.
+ * A Javadoc read again can be replaced by an equivalent instance shared with other consumers (see
+ * {@link #JavadocCache(UnaryOperator)}).
+ * <p>
+ * Bundles are written and read without locking this cache, so the other functions of this cache
+ * (for example {@link #isLoaded(URI)} or {@link #findCandidates(String)}) don't wait for the disk.
+ * <p>
+ * A signature of the names of the elements of each Javadoc is always kept in memory, so that
+ * {@link #findCandidates(String)} can tell which Javadocs may contain an element matching some text
+ * without reading evicted Javadocs. The signature is a Bloom filter of the sequences of up to three
+ * characters of the names, whose size grows with the number of elements so that it doesn't match every
+ * text once the Javadoc is large.
+ * <p>
+ * By default, the budget is unlimited, so no Javadoc is ever evicted.
+ * <p>
+ * This class is thread-safe.
+ */
+public class JavadocCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(JavadocCache.class);
+    private static final int ELEMENT_OVERHEAD_BYTES = 200;
+    private static final int SIGNATURE_GRAM_LENGTH = 3;
+    private static final int SIGNATURE_BITS_PER_ELEMENT = 8;
+    private static final int MIN_SIGNATURE_BITS = 1 << 12;
+    private static final int MAX_SIGNATURE_BITS = 1 << 23;
+    private static final int SIGNATURE_HASHES = 2;
+    private final Map<URI, CachedJavadoc> javadocs = new LinkedHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final UnaryOperator<JavadocSymbolIndex> reloadResolver;
+    private long maxBytes = Long.MAX_VALUE;
+    private long usedBytes = 0;
+    private long evictionCount = 0;
+    private long reloadCount = 0;
+    private long accessCounter = 0;
+
+    /**
+     * A listener notified when Javadocs are added to or removed from memory.
+     * Functions of this listener may be called from any thread.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the elements of a Javadoc are added to memory, either because the Javadoc
+         * was added to the cache or because it was read again after being evicted.
+         *
+         * @param javadoc the Javadoc whose elements are now in memory
+         */
+        void onJavadocLoaded(JavadocSymbolIndex javadoc);
+
+        /**
+         * Called when the elements of a Javadoc are evicted from memory. Listeners should
+         * release any reference they have to the elements of the Javadoc.
+         *
+         * @param uri the URI of the evicted Javadoc
+         */
+        void onJavadocEvicted(URI uri);
+    }
+
+    private static class CachedJavadoc {
+
+        private final URI uri;
+        private final long sizeBytes;
+        private final BitSet signature;
+        private JavadocSymbolIndex javadoc;
+        private Path bundle;
+        private CompletableFuture<JavadocSymbolIndex> reloading;
+        private boolean evicting = false;
+        private long lastAccess;
+
+        private CachedJavadoc(JavadocSymbolIndex javadoc) {
+            this.uri = javadoc.getJavadoc().uri();
+            this.sizeBytes = estimateSize(javadoc.getJavadoc());
+            this.signature = computeSignature(javadoc.getJavadoc());
+            this.javadoc = javadoc;
+        }
+    }
+    private record Eviction(CachedJavadoc cachedJavadoc, JavadocSymbolIndex javadoc, long lastAccess, Path bundle) {}
+
+    /**
+     * Create an empty cache.
+     */
+    public JavadocCache() {
+        this(UnaryOperator.identity());
+    }
+
+    /**
+     * Create an empty cache which gives each Javadoc read again from disk to the provided function, and keeps
+     * the instance returned by the function instead. This allows a consumer sharing Javadocs with others (for
+     * example through the {@link JavadocRegistry}) to keep using the shared instance instead of a copy read
+     * from disk.
+     *
+     * @param reloadResolver a function receiving a Javadoc read again from disk and returning the instance to
+     *                       keep in memory, which must contain the same elements. It is called without this
+     *                       cache being locked
+     */
+    public JavadocCache(UnaryOperator<JavadocSymbolIndex> reloadResolver) {
+        this.reloadResolver = reloadResolver;
+    }
+
+    /**
+     * Set the maximum estimated number of bytes the elements of the Javadocs of this cache
+     * should occupy in memory. Javadocs are evicted if needed.
+     *
+     * @param maxBytes the heap budget in bytes. Use {@link Long#MAX_VALUE} to disable eviction
+     * @throws IllegalArgumentException if maxBytes is negative
+     */
+    public void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException(String.format("The heap budget (%d) cannot be negative", maxBytes));
+        }
+
+        synchronized (this) {
+            this.maxBytes = maxBytes;
+        }
+        evictIfNeeded(null);
+    }
+
+    /**
+     * Add a Javadoc to this cache. If a Javadoc with the same URI is already present, it is replaced.
+     * This may evict other Javadocs.
+     *
+     * @param javadoc the Javadoc to add
+     */
+    public void add(JavadocSymbolIndex javadoc) {
+        CachedJavadoc cachedJavadoc = new CachedJavadoc(javadoc);
+        CachedJavadoc previousJavadoc;
+
+        synchronized (this) {
+            previousJavadoc = javadocs.put(cachedJavadoc.uri, cachedJavadoc);
+            if (previousJavadoc != null && previousJavadoc.javadoc != null) {
+                usedBytes -= previousJavadoc.sizeBytes;
+            }
+
+            cachedJavadoc.lastAccess = ++accessCounter;
+            usedBytes += cachedJavadoc.sizeBytes;
+        }
+
+        if (previousJavadoc != null && previousJavadoc.bundle != null) {
+            deleteBundle(previousJavadoc.bundle);
+        }
+        notifyLoaded(javadoc);
+        evictIfNeeded(cachedJavadoc);
+    }
+
+    /**
+     * Get a Javadoc of this cache, reading it again from disk if it was evicted.
+     * This marks the Javadoc as recently used, and may evict other Javadocs.
+     * <p>
+     * Evicted Javadocs are read without locking this cache, so other functions of this cache
+     * don't wait for the disk. Concurrent calls for the same evicted Javadoc read it only once.
+     *
+     * @param uri the URI of the Javadoc to retrieve
+     * @return the Javadoc with the provided URI, or an empty Optional if this cache doesn't contain
+     * it or if it cannot be read again
+     */
+    public Optional<JavadocSymbolIndex> get(URI uri) {
+        CachedJavadoc cachedJavadoc;
+        CompletableFuture<JavadocSymbolIndex> reloading;
+        Path bundle;
+        synchronized (this) {
+            cachedJavadoc = javadocs.get(uri);
+            if (cachedJavadoc == null) {
+                return Optional.empty();
+            }
+
+            cachedJavadoc.lastAccess = ++accessCounter;
+            if (cachedJavadoc.javadoc != null) {
+                return Optional.of(cachedJavadoc.javadoc);
+            }
+            if (cachedJavadoc.reloading != null) {
+                reloading = cachedJavadoc.reloading;
+                bundle = null;
+            } else {
+                cachedJavadoc.reloading = new CompletableFuture<>();
+                reloading = null;
+                bundle = cachedJavadoc.bundle;
+            }
+        }
+
+        // Another thread is already reading the Javadoc
+        if (reloading != null) {
+            return Optional.ofNullable(reloading.join());
+        }
+
+        JavadocSymbolIndex javadoc = readBundle(uri, bundle);
+        boolean published = false;
+        synchronized (this) {
+            reloading = cachedJavadoc.reloading;
+            cachedJavadoc.reloading = null;
+
+            if (javadoc != null && javadocs.get(uri) == cachedJavadoc && cachedJavadoc.javadoc == null) {
+                // The bundle is kept, so that the Javadoc can be evicted again without being written
+                cachedJavadoc.javadoc = javadoc;
+                usedBytes += cachedJavadoc.sizeBytes;
+                reloadCount++;
+                published = true;
+                logger.debug("{} read again from disk. {} reloads so far", uri, reloadCount);
+            }
+        }
+
+        if (published) {
+            JavadocSymbolIndex resolvedJavadoc = reloadResolver.apply(javadoc);
+            if (resolvedJavadoc != javadoc) {
+                synchronized (this) {
+                    if (cachedJavadoc.javadoc == javadoc) {
+                        cachedJavadoc.javadoc = resolvedJavadoc;
+                    }
+                }
+                javadoc = resolvedJavadoc;
+            }
+        }
+        reloading.complete(javadoc);
+
+        if (published) {
+            notifyLoaded(javadoc);
+            evictIfNeeded(cachedJavadoc);
+        }
+        return Optional.ofNullable(javadoc);
+    }
+
+    /**
+     * Find the Javadocs that may contain an element whose name contains the provided text (ignoring case).
+     * This doesn't read evicted Javadocs, and can return Javadocs that don't actually contain such element.
+     * Returned Javadocs are marked as recently used.
+     *
+     * @param text the text to search for
+     * @return the URIs of the Javadocs that may contain an element whose name contains the provided text
+     */
+    public synchronized List<URI> findCandidates(String text) {
+        String lowerCaseText = text.toLowerCase();
+        List<URI> candidates = new ArrayList<>();
+
+        for (CachedJavadoc cachedJavadoc: javadocs.values()) {
+            if (mayContain(cachedJavadoc.signature, lowerCaseText)) {
+                cachedJavadoc.lastAccess = ++accessCounter;
+                candidates.add(cachedJavadoc.uri);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Remove all Javadocs from this cache and delete the files written when Javadocs were evicted
+     * (including the files of Javadocs read again since then). Listeners are not notified.
+     */
+    public void clear() {
+        List<Path> bundles = new ArrayList<>();
+
+        synchronized (this) {
+            for (CachedJavadoc cachedJavadoc: javadocs.values()) {
+                if (cachedJavadoc.bundle != null) {
+                    bundles.add(cachedJavadoc.bundle);
+                    cachedJavadoc.bundle = null;
+                }
+            }
+            javadocs.clear();
+            usedBytes = 0;
+        }
+
+        for (Path bundle: bundles) {
+            deleteBundle(bundle);
+        }
+    }
+
+    /**
+     * @return the URIs of all Javadocs of this cache, evicted or not
+     */
+    public synchronized List<URI> getUris() {
+        return List.copyOf(javadocs.keySet());
+    }
+
+    /**
+     * Indicate whether the elements of a Javadoc are currently in memory.
+     *
+     * @param uri the URI of the Javadoc
+     * @return whether the Javadoc is part of this cache and is not evicted
+     */
+    public synchronized boolean isLoaded(URI uri) {
+        CachedJavadoc cachedJavadoc = javadocs.get(uri);
+        return cachedJavadoc != null && cachedJavadoc.javadoc != null;
+    }
+
+    /**
+     * @return the estimated number of bytes occupied by the elements of the Javadocs in memory
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return the number of times a Javadoc was evicted from memory
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of times an evicted Javadoc was read again from disk
+     */
+    public synchronized long getReloadCount() {
+        return reloadCount;
+    }
+
+    /**
+     * Add a listener notified when Javadocs are added to or removed from memory.
+     * Listeners are called without this cache being locked, from the thread that added, read or evicted
+     * the Javadoc.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener previously added with {@link #addListener(Listener)}.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void evictIfNeeded(CachedJavadoc javadocToKeep) {
+        // Javadocs to evict are chosen while the cache is locked, written to disk without
+        // holding the lock, and only evicted if they weren't used while they were written
+        List<Eviction> evictions = new ArrayList<>();
+        synchronized (this) {
+            long projectedBytes = usedBytes;
+            List<CachedJavadoc> evictionCandidates = javadocs.values().stream()
+                    .filter(cachedJavadoc -> cachedJavadoc.javadoc != null && !cachedJavadoc.evicting && cachedJavadoc != javadocToKeep)
+                    .sorted(Comparator.comparingLong(cachedJavadoc -> cachedJavadoc.lastAccess))
+                    .toList();
+
+            for (CachedJavadoc cachedJavadoc: evictionCandidates) {
+                if (projectedBytes <= maxBytes) {
+                    break;
+                }
+
+                cachedJavadoc.evicting = true;
+                evictions.add(new Eviction(cachedJavadoc, cachedJavadoc.javadoc, cachedJavadoc.lastAccess, cachedJavadoc.bundle));
+                projectedBytes -= cachedJavadoc.sizeBytes;
+            }
+        }
+
+        List<URI> evictedUris = new ArrayList<>();
+        for (Eviction eviction: evictions) {
+            CachedJavadoc cachedJavadoc = eviction.cachedJavadoc();
+            // A Javadoc read again from its bundle contains the same elements, so its bundle is reused
+            Path bundle = eviction.bundle() == null ? writeBundle(eviction.javadoc()) : eviction.bundle();
+
+            synchronized (this) {
+                cachedJavadoc.evicting = false;
+
+                if (bundle == null ||
+                        javadocs.get(cachedJavadoc.uri) != cachedJavadoc ||
+                        cachedJavadoc.javadoc != eviction.javadoc() ||
+                        cachedJavadoc.lastAccess != eviction.lastAccess() ||
+                        usedBytes <= maxBytes
+                ) {
+                    // The Javadoc was removed, replaced or used while being written, or is not in excess anymore.
+                    // A reused bundle is deleted by whoever removed or replaced the Javadoc
+                    if (bundle != null && eviction.bundle() == null) {
+                        deleteBundle(bundle);
+                    }
+                    continue;
+                }
+
+                cachedJavadoc.javadoc = null;
+                cachedJavadoc.bundle = bundle;
+                usedBytes -= cachedJavadoc.sizeBytes;
+                evictionCount++;
+                logger.debug(
+                        "{} evicted from memory. {} evictions so far, {} bytes used out of {}",
+                        cachedJavadoc.uri,
+                        evictionCount,
+                        usedBytes,
+                        maxBytes
+                );
+            }
+            evictedUris.add(cachedJavadoc.uri);
+        }
+
+        for (URI uri: evictedUris) {
+            for (Listener listener: listeners) {
+                listener.onJavadocEvicted(uri);
+            }
+        }
+    }
+
+    private void notifyLoaded(JavadocSymbolIndex javadoc) {
+        for (Listener listener: listeners) {
+            listener.onJavadocLoaded(javadoc);
+        }
+    }
+
+    private static Path writeBundle(JavadocSymbolIndex javadoc) {
+        try {
+            Path path = Files.createTempFile("javadoc-viewer-", ".idx");
+            try {
+                JavadocIndexBundle.write(path, List.of(javadoc.getJavadoc()), false);
+            } catch (IOException e) {
+                deleteBundle(path);
+                throw e;
+            }
+            return path;
+        } catch (IOException e) {
+            logger.warn("Cannot write {} to disk. It will be kept in memory", javadoc.getJavadoc().uri(), e);
+            return null;
+        }
+    }
+
+    private static JavadocSymbolIndex readBundle(URI uri, Path bundle) {
+        // The bundle is only mapped while the Javadoc is read, so that it can be deleted while the Javadoc is in memory
+        try {
+            Optional<Javadoc> javadoc = JavadocIndexBundle.read(bundle).getJavadoc(uri);
+            return javadoc.map(JavadocSymbolIndex::create).orElse(null);
+        } catch (IOException e) {
+            logger.warn("Cannot read {} again from {}", uri, bundle, e);
+            return null;
+        }
+    }
+
+    private static void deleteBundle(Path bundle) {
+        try {
+            Files.deleteIfExists(bundle);
+        } catch (IOException e) {
+            logger.debug("Cannot delete {}. It will be deleted when the JVM exits", bundle, e);
+            bundle.toFile().deleteOnExit();
+        }
+    }
+
+    private static long estimateSize(Javadoc javadoc) {
+        long size = 0;
+        for (JavadocElement element: javadoc.elements()) {
+            size += ELEMENT_OVERHEAD_BYTES + element.name().length() + element.uri().toString().length();
+        }
+        return size;
+    }
+
+    private static BitSet computeSignature(Javadoc javadoc) {
+        // The number of bits is a power of two, so that it is also the size of the bit set
+        int numberOfBits = (int) Math.min(
+                MAX_SIGNATURE_BITS,
+                Math.max(MIN_SIGNATURE_BITS, (long) javadoc.elements().size() * SIGNATURE_BITS_PER_ELEMENT)
+        );
+        BitSet signature = new BitSet(Integer.highestOneBit(numberOfBits - 1) << 1);
+
+        for (JavadocElement element: javadoc.elements()) {
+            String name = element.name().toLowerCase();
+
+            // Each sequence of up to SIGNATURE_GRAM_LENGTH characters of the name is added to the filter
+            for (int start=0; start<name.length(); start++) {
+                for (int length=1; length<=SIGNATURE_GRAM_LENGTH && start+length<=name.length(); length++) {
+                    long gram = getGram(name, start, length);
+
+                    for (int i=0; i<SIGNATURE_HASHES; i++) {
+                        signature.set(getSignatureBit(gram, i, signature.size()));
+                    }
+                }
+            }
+        }
+        return signature;
+    }
+
+    private static boolean mayContain(BitSet signature, String text) {
+        if (text.isEmpty()) {
+            return true;
+        }
+
+        // A name containing the text contains all sequences of SIGNATURE_GRAM_LENGTH characters of the text,
+        // or the text itself if it is shorter
+        for (int start=0; start<=Math.max(0, text.length()-SIGNATURE_GRAM_LENGTH); start++) {
+            long gram = getGram(text, start, Math.min(SIGNATURE_GRAM_LENGTH, text.length()));
+
+            for (int i=0; i<SIGNATURE_HASHES; i++) {
+                if (!signature.get(getSignatureBit(gram, i, signature.size()))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static long getGram(String text, int start, int length) {
+        // Characters are 16 bits long, so a sequence of up to 3 characters and its length fit in a long
+        long gram = length;
+        for (int i=start; i<start+length; i++) {
+            gram = (gram << Character.SIZE) | text.charAt(i);
+        }
+        return gram;
+    }
+
+    private static int getSignatureBit(long gram, int hashIndex, int numberOfBits) {
+        // Double hashing: the hashes are derived from the two halves of a mixed value of the sequence
+        long mixedGram = gram * 0x9E3779B97F4A7C15L;
+        int firstHash = (int) (mixedGram >>> 32);
+        int secondHash = (int) mixedGram | 1;
+
+        return (firstHash + hashIndex * secondHash) & (numberOfBits - 1);
+    }
+}
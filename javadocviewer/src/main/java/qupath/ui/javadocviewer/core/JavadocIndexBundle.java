@@ -0,0 +1,420 @@
+package qupath.ui.javadocviewer.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * A prebuilt index of several {@link Javadoc Javadocs}, stored in a compact binary file.
+ * <p>
+ * A bundle is created with {@link #write(Path, List)} (usually once, when a fixed set of Javadocs
+ * is shipped with an application) and opened with {@link #read(Path)}. The file is memory-mapped
+ * when opened, and the elements of a Javadoc are only decoded when {@link #getJavadoc(URI)} is called.
+ * This avoids downloading and parsing the index page of the Javadocs contained in the bundle.
+ * <p>
+ * The modification time of the index page of each Javadoc is recorded in the bundle, so that a Javadoc
+ * which was modified after the creation of the bundle is not returned by {@link #getJavadoc(URI)}. For
+ * local Javadocs, this is the modification time of the file. For remote Javadocs, this is the
+ * {@code Last-Modified} header of the index page, fetched with a HEAD request in the background the first
+ * time the Javadoc is read: reading a remote Javadoc never waits for its server, so the bundled elements
+ * are returned until the request completes, and are not returned anymore if it reveals that the Javadoc
+ * was modified. If the server cannot be reached, the bundled elements are used (so that Javadocs can be
+ * browsed offline). If the server doesn't send this header, the bundled elements are only used during
+ * the week following the creation of the bundle.
+ * <p>
+ * The URIs of the bundled Javadocs are available with {@link #getUris()}, so that they can be loaded
+ * without searching for Javadocs first.
+ * <p>
+ * This class is thread-safe.
+ */
+public class JavadocIndexBundle {
+
+    private static final Logger logger = LoggerFactory.getLogger(JavadocIndexBundle.class);
+    private static final int MAGIC_NUMBER = 0x4A445642;
+    private static final int FORMAT_VERSION = 2;
+    private static final long UNKNOWN_STAMP = -1;
+    private static final long UNCHECKED_STAMP = -2;
+    private static final Duration REMOTE_MAX_AGE = Duration.ofDays(7);
+    private static final Duration REMOTE_STAMP_TIMEOUT = Duration.ofSeconds(5);
+    private static final String LAST_MODIFIED_HEADER = "Last-Modified";
+    private static final byte RELATIVE_URI = 0;
+    private static final byte ABSOLUTE_URI = 1;
+    private final ByteBuffer buffer;
+    private final long creationTime;
+    private final Map<URI, Section> sections;
+    private final List<String> categories;
+    private final Map<URI, CompletableFuture<Boolean>> remoteValidations = new ConcurrentHashMap<>();
+    private record Section(long stamp, int offset) {}
+
+    private JavadocIndexBundle(ByteBuffer buffer, long creationTime, Map<URI, Section> sections, List<String> categories) {
+        this.buffer = buffer;
+        this.creationTime = creationTime;
+        this.sections = Collections.unmodifiableMap(sections);
+        this.categories = categories;
+    }
+
+    /**
+     * Write the provided Javadocs to a bundle file. If the file already exists, it is overwritten.
+     * <p>
+     * Strings are written with a variable-length prefix (one byte for strings shorter than 128 bytes).
+     * They are not front-coded: elements are filtered by category before their strings are decoded,
+     * which requires each string to be readable (and skippable) on its own.
+     * <p>
+     * This sends a HEAD request to each remote Javadoc to record its modification time, so it
+     * should not be called from the JavaFX Application Thread.
+     *
+     * @param path the path of the bundle file to create
+     * @param javadocs the Javadocs to write to the bundle
+     * @throws IOException if an error occurs while writing the file
+     */
+    public static void write(Path path, List<Javadoc> javadocs) throws IOException {
+        write(path, javadocs, true);
+    }
+
+    /**
+     * Same as {@link #write(Path, List)}, but without recording the modification times of the
+     * Javadocs if checkModifications is false. Bundled Javadocs are then always considered up-to-date,
+     * and no request is sent to remote Javadocs. This is used for bundles that only live as long as
+     * the Javadocs they contain (see {@link JavadocCache}).
+     *
+     * @param path the path of the bundle file to create
+     * @param javadocs the Javadocs to write to the bundle
+     * @param checkModifications whether to record the modification times of the Javadocs
+     * @throws IOException if an error occurs while writing the file
+     */
+    static void write(Path path, List<Javadoc> javadocs, boolean checkModifications) throws IOException {
+        List<String> categories = javadocs.stream()
+                .map(Javadoc::elements)
+                .flatMap(List::stream)
+                .map(JavadocElement::category)
+                .distinct()
+                .toList();
+        Map<String, Integer> categoryIndices = new HashMap<>();
+        for (int i=0; i<categories.size(); i++) {
+            categoryIndices.put(categories.get(i), i);
+        }
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream dataStream = new DataOutputStream(data);
+        List<Integer> offsets = new ArrayList<>();
+        for (Javadoc javadoc: javadocs) {
+            offsets.add(dataStream.size());
+
+            String baseUri = getBaseUri(javadoc.uri());
+            writeLength(dataStream, javadoc.elements().size());
+            for (JavadocElement element: javadoc.elements()) {
+                String uri = element.uri().toString();
+                if (uri.startsWith(baseUri)) {
+                    dataStream.writeByte(RELATIVE_URI);
+                    writeString(dataStream, uri.substring(baseUri.length()));
+                } else {
+                    dataStream.writeByte(ABSOLUTE_URI);
+                    writeString(dataStream, uri);
+                }
+                writeString(dataStream, element.name());
+                writeLength(dataStream, categoryIndices.get(element.category()));
+            }
+        }
+        dataStream.flush();
+
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            outputStream.writeInt(MAGIC_NUMBER);
+            outputStream.writeInt(FORMAT_VERSION);
+            outputStream.writeLong(System.currentTimeMillis());
+
+            writeLength(outputStream, categories.size());
+            for (String category: categories) {
+                writeString(outputStream, category);
+            }
+
+            writeLength(outputStream, javadocs.size());
+            for (int i=0; i<javadocs.size(); i++) {
+                writeString(outputStream, javadocs.get(i).uri().toString());
+                outputStream.writeLong(checkModifications ? getStamp(javadocs.get(i).uri()) : UNCHECKED_STAMP);
+                outputStream.writeInt(offsets.get(i));
+            }
+
+            data.writeTo(outputStream);
+        }
+        logger.debug("Index bundle with {} Javadocs written to {}", javadocs.size(), path);
+    }
+
+    /**
+     * Open a bundle file previously created with {@link #write(Path, List)}.
+     * The file is memory-mapped, so it must not be modified while the returned bundle is used.
+     *
+     * @param path the path of the bundle file to open
+     * @return the bundle contained in the provided file
+     * @throws IOException if the file cannot be read or is not a bundle file with a supported version
+     */
+    public static JavadocIndexBundle read(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC_NUMBER) {
+                throw new IOException(String.format("%s is not a Javadoc index bundle", path));
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException(String.format(
+                        "The index bundle %s has version %d, but only version %d is supported",
+                        path,
+                        version,
+                        FORMAT_VERSION
+                ));
+            }
+            long creationTime = buffer.getLong();
+
+            int numberOfCategories = readLength(buffer);
+            List<String> categories = new ArrayList<>(numberOfCategories);
+            for (int i=0; i<numberOfCategories; i++) {
+                categories.add(readString(buffer));
+            }
+
+            int numberOfJavadocs = readLength(buffer);
+            Map<URI, Section> sections = new LinkedHashMap<>();
+            for (int i=0; i<numberOfJavadocs; i++) {
+                String uri = readString(buffer);
+                long stamp = buffer.getLong();
+                int offset = buffer.getInt();
+
+                try {
+                    sections.put(new URI(uri), new Section(stamp, offset));
+                } catch (URISyntaxException e) {
+                    logger.debug("Cannot create URI {} of bundled Javadoc. Skipping it", uri, e);
+                }
+            }
+
+            logger.debug("Index bundle {} opened with {} Javadocs", path, sections.size());
+            return new JavadocIndexBundle(buffer.slice(), creationTime, sections, List.copyOf(categories));
+        } catch (RuntimeException e) {
+            throw new IOException(String.format("The index bundle %s is corrupted", path), e);
+        }
+    }
+
+    /**
+     * @return an unmodifiable view of the URIs of the Javadocs contained in this bundle
+     */
+    public Set<URI> getUris() {
+        return sections.keySet();
+    }
+
+    /**
+     * Get a Javadoc of this bundle. The elements of the Javadoc are decoded each time this
+     * function is called, so callers should keep a reference to the returned Javadoc.
+     * <p>
+     * This doesn't wait for any server: the modification of a remote Javadoc is checked in the background,
+     * so the bundled elements of a modified remote Javadoc can be returned until the check completes.
+     *
+     * @param uri the URI of the Javadoc to retrieve
+     * @return the Javadoc with the provided URI, or an empty Optional if this bundle doesn't
+     * contain it, if the Javadoc was modified after the creation of this bundle, or if the
+     * Javadoc cannot be decoded
+     */
+    public Optional<Javadoc> getJavadoc(URI uri) {
+        return getJavadoc(uri, JavadocParseOptions.ALL_ELEMENTS);
+    }
+
+    /**
+     * Get a Javadoc of this bundle, only keeping the elements accepted by the provided options.
+     * Rejected elements are skipped without being decoded. See {@link #getJavadoc(URI)} for more information.
+     *
+     * @param uri the URI of the Javadoc to retrieve
+     * @param options the options restricting the elements to read
+     * @return the Javadoc with the provided URI, or an empty Optional if this bundle doesn't
+     * contain it, if the Javadoc was modified after the creation of this bundle, or if the
+     * Javadoc cannot be decoded
+     */
+    public Optional<Javadoc> getJavadoc(URI uri, JavadocParseOptions options) {
+        Section section = sections.get(uri);
+        if (section == null) {
+            return Optional.empty();
+        }
+        if (!isUpToDate(uri, section)) {
+            logger.debug("{} was modified after the creation of the bundle. Not using the bundled elements", uri);
+            return Optional.empty();
+        }
+
+        try {
+            ByteBuffer data = buffer.duplicate().position(section.offset());
+            String baseUri = getBaseUri(uri);
+
+            Predicate<String> nameFilter = options.createNameFilter();
+            int numberOfElements = readLength(data);
+            List<JavadocElement> elements = new ArrayList<>(Math.min(numberOfElements, options.maxElements()));
+            for (int i=0; i<numberOfElements && elements.size() < options.maxElements(); i++) {
+                byte uriType = data.get();
+                int linkPosition = data.position();
+                skipString(data);
+                int namePosition = data.position();
+                skipString(data);
+                String category = categories.get(readLength(data));
+                if (!options.acceptsCategory(category)) {
+                    continue;
+                }
+
+                int nextElementPosition = data.position();
+                String name = readString(data.position(namePosition));
+                if (!nameFilter.test(name)) {
+                    data.position(nextElementPosition);
+                    continue;
+                }
+                String storedLink = readString(data.position(linkPosition));
+                String link = uriType == RELATIVE_URI ? baseUri + storedLink : storedLink;
+                data.position(nextElementPosition);
+
+                try {
+                    elements.add(new JavadocElement(new URI(link), name, category));
+                } catch (URISyntaxException e) {
+                    logger.debug("Cannot create URI {} of Javadoc element", link, e);
+                }
+            }
+
+            logger.debug("{} elements of {} read from index bundle", elements.size(), uri);
+            return Optional.of(new Javadoc(uri, elements));
+        } catch (RuntimeException e) {
+            logger.warn("Cannot read elements of {} from index bundle", uri, e);
+            return Optional.empty();
+        }
+    }
+
+    private static String getBaseUri(URI javadocUri) {
+        return javadocUri.toString().substring(0, javadocUri.toString().lastIndexOf('/') + 1);
+    }
+
+    private boolean isUpToDate(URI uri, Section section) {
+        if (section.stamp() == UNCHECKED_STAMP) {
+            return true;
+        } else if (!Utils.doesUrilinkToWebsite(uri)) {
+            return section.stamp() == UNKNOWN_STAMP || section.stamp() == getStamp(uri);
+        }
+
+        // The bundled elements are assumed to be up-to-date until the server answers
+        return remoteValidations.computeIfAbsent(uri, u -> validateRemote(u, section)).getNow(true);
+    }
+
+    private CompletableFuture<Boolean> validateRemote(URI uri, Section section) {
+        return MirroredFetcher.getInstance().fetchHeaders(uri)
+                .orTimeout(REMOTE_STAMP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(response -> {
+                    Optional<Long> lastModified = getLastModified(response);
+
+                    if (section.stamp() != UNKNOWN_STAMP && lastModified.isPresent()) {
+                        return section.stamp() == lastModified.get();
+                    } else {
+                        return System.currentTimeMillis() - creationTime < REMOTE_MAX_AGE.toMillis();
+                    }
+                })
+                .exceptionally(e -> {
+                    logger.debug("Cannot check whether {} was modified. Assuming it wasn't", uri, e);
+                    return true;
+                });
+    }
+
+    private static long getStamp(URI javadocUri) {
+        try {
+            if ("jar".equals(javadocUri.getScheme())) {
+                String jarUri = javadocUri.getRawSchemeSpecificPart();
+                return Files.getLastModifiedTime(Paths.get(new URI(jarUri.substring(0, jarUri.lastIndexOf('!'))))).toMillis();
+            } else if ("file".equals(javadocUri.getScheme())) {
+                return Files.getLastModifiedTime(Paths.get(javadocUri)).toMillis();
+            } else if (Utils.doesUrilinkToWebsite(javadocUri)) {
+                return fetchLastModified(javadocUri).orElse(UNKNOWN_STAMP);
+            } else {
+                return UNKNOWN_STAMP;
+            }
+        } catch (Exception e) {
+            logger.debug("Cannot get modification time of {}", javadocUri, e);
+            return UNKNOWN_STAMP;
+        }
+    }
+
+    private static Optional<Long> fetchLastModified(URI javadocUri) throws Exception {
+        CompletableFuture<HttpResponse<Void>> response = MirroredFetcher.getInstance().fetchHeaders(javadocUri);
+
+        try {
+            return getLastModified(response.get(REMOTE_STAMP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } finally {
+            response.cancel(true);
+        }
+    }
+
+    private static Optional<Long> getLastModified(HttpResponse<?> response) {
+        return response.headers()
+                .firstValue(LAST_MODIFIED_HEADER)
+                .map(date -> ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli());
+    }
+
+    private static void writeString(DataOutputStream outputStream, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeLength(outputStream, bytes.length);
+        outputStream.write(bytes);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = readLength(buffer);
+        buffer.position(buffer.position() + length);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[readLength(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeLength(DataOutputStream outputStream, int length) throws IOException {
+        // 7 bits per byte, the highest bit indicating that another byte follows
+        while ((length & ~0x7F) != 0) {
+            outputStream.writeByte((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        outputStream.writeByte(length);
+    }
+
+    private static int readLength(ByteBuffer buffer) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return length;
+    }
+}
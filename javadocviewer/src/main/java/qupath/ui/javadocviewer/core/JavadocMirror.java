@@ -0,0 +1,882 @@
+package qupath.ui.javadocviewer.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A local mirror of remote (HTTP) Javadocs, allowing to browse them faster and offline.
+ * <p>
+ * The mirror runs a small HTTP server on the loopback interface. Javadocs must be registered with
+ * {@link #register(URI)} before they can be browsed through the mirror: the server only serves files
+ * located under the directory of the index page of a registered Javadoc, and answers other requests with
+ * a 403 status, so that it cannot be used to reach arbitrary servers. A remote URI of a registered Javadoc
+ * is converted to a local URI of this server with {@link #getLocalUri(URI)}, and the local URI should be given
+ * to the web engine displaying the page. Relative links of the page (other pages, stylesheets, scripts, images)
+ * then also go through the mirror.
+ * <p>
+ * When the mirror serves a page or an asset for the first time, it fetches it from the remote server
+ * (with {@link MirroredFetcher}, so the mirrors of the remote server are used if it is slow or down)
+ * and stores it on disk. Stored files are named by the hash of their content, so identical files
+ * (for example the stylesheets of several Javadocs) are only stored once. When the stored files
+ * exceed a size budget, the least recently used ones are deleted.
+ * <p>
+ * The whole site of a Javadoc can also be downloaded in the background with {@link #prefetch(URI, Executor)}.
+ * It is stored in a compressed archive that the mirror uses before fetching remote files. Archives
+ * are not subject to the size budget, but the size of each archive is bounded (see {@link #setMaxArchiveSize(int, long)}).
+ * <p>
+ * Recently served pages are also kept in memory. Pages that are likely to be browsed soon (for example the
+ * top results of a search) can be loaded in memory in advance with {@link #prefetchPages(List)}, so that
+ * they are displayed without waiting for the disk or the network.
+ * <p>
+ * Any HTTP server can be mirrored, so a local server can be used instead of a remote one when testing.
+ * <p>
+ * This class is thread-safe.
+ */
+public class JavadocMirror implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(JavadocMirror.class);
+    private static final String OBJECTS_DIRECTORY = "objects";
+    private static final String ARCHIVES_DIRECTORY = "archives";
+    private static final String JOURNAL_FILE = "journal.tsv";
+    private static final String ARCHIVE_EXTENSION = ".zip";
+    private static final String INDEX_ALL_PAGE = "index-all.html";
+    private static final String ADDED_ENTRY = "+";
+    private static final String REMOVED_ENTRY = "-";
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "html", "text/html; charset=utf-8",
+            "css", "text/css; charset=utf-8",
+            "js", "text/javascript; charset=utf-8",
+            "json", "application/json",
+            "svg", "image/svg+xml",
+            "png", "image/png",
+            "gif", "image/gif",
+            "zip", "application/zip"
+    );
+    private static final Pattern LINK_PATTERN = Pattern.compile("(?:href|src)\\s*=\\s*[\"']([^\"'#?]+)|url\\(\\s*[\"']?([^\"')#?]+)");
+    private static final int SERVER_THREADS = 4;
+    private static final long DEFAULT_MAX_MEMORY_BYTES = 32L << 20;
+    private static final int DEFAULT_MAX_CONCURRENT_PREFETCHES = 2;
+    private static final int PREFETCH_THREAD_KEEP_ALIVE_SECONDS = 30;
+    private static final int DEFAULT_MAX_ARCHIVE_FILES = 100_000;
+    private static final long DEFAULT_MAX_ARCHIVE_BYTES = 2L << 30;
+    private final Path directory;
+    private final long maxBytes;
+    private final HttpServer server;
+    private final ExecutorService serverExecutor;
+    private final PageCache pageCache;
+    private final ThreadPoolExecutor prefetchExecutor;
+    private final AtomicLong prefetchGeneration = new AtomicLong();
+    private final Map<URI, StoredFile> storedFiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Integer> objectReferences = new HashMap<>();
+    private final Map<URI, ZipFile> archives = new HashMap<>();
+    private final Set<URI> registeredBaseUris = new HashSet<>();
+    private final BufferedWriter journal;
+    private long usedBytes = 0;
+    private long hitCount = 0;
+    private long archiveHitCount = 0;
+    private long missCount = 0;
+    private int maxArchiveFiles = DEFAULT_MAX_ARCHIVE_FILES;
+    private long maxArchiveBytes = DEFAULT_MAX_ARCHIVE_BYTES;
+    private record StoredFile(String hash, long size, String contentType) {}
+
+    /**
+     * Create the mirror and start its local server. Files stored by a previous mirror in the same
+     * directory are reused. At most 32 MB of pages are kept in memory, and at most two pages are
+     * prefetched at the same time.
+     *
+     * @param directory the directory where files should be stored. It is created if it doesn't exist
+     * @param maxBytes the maximum number of bytes the files fetched on demand should occupy on disk
+     * @throws IOException if the directory cannot be created or read, or if the local server cannot be started
+     * @throws IllegalArgumentException if maxBytes is negative
+     */
+    public JavadocMirror(Path directory, long maxBytes) throws IOException {
+        this(directory, maxBytes, DEFAULT_MAX_MEMORY_BYTES, DEFAULT_MAX_CONCURRENT_PREFETCHES);
+    }
+
+    /**
+     * Create the mirror and start its local server. Files stored by a previous mirror in the same
+     * directory are reused.
+     *
+     * @param directory the directory where files should be stored. It is created if it doesn't exist
+     * @param maxBytes the maximum number of bytes the files fetched on demand should occupy on disk
+     * @param maxMemoryBytes the maximum number of bytes the pages kept in memory should occupy
+     * @param maxConcurrentPrefetches the maximum number of pages that {@link #prefetchPages(List)} loads at the same time
+     * @throws IOException if the directory cannot be created or read, or if the local server cannot be started
+     * @throws IllegalArgumentException if maxBytes or maxMemoryBytes is negative, or if maxConcurrentPrefetches is
+     * less than 1
+     */
+    public JavadocMirror(Path directory, long maxBytes, long maxMemoryBytes, int maxConcurrentPrefetches) throws IOException {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException(String.format("The maximum size of the mirror (%d) cannot be negative", maxBytes));
+        }
+        if (maxMemoryBytes < 0) {
+            throw new IllegalArgumentException(String.format("The maximum size of the pages in memory (%d) cannot be negative", maxMemoryBytes));
+        }
+        if (maxConcurrentPrefetches < 1) {
+            throw new IllegalArgumentException(String.format("The maximum number of concurrent prefetches (%d) must be at least 1", maxConcurrentPrefetches));
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.pageCache = new PageCache(maxMemoryBytes);
+
+        Files.createDirectories(directory.resolve(OBJECTS_DIRECTORY));
+        Files.createDirectories(directory.resolve(ARCHIVES_DIRECTORY));
+        readJournal();
+        readArchives();
+        journal = Files.newBufferedWriter(
+                directory.resolve(JOURNAL_FILE),
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND
+        );
+        synchronized (this) {
+            evictIfNeeded();
+        }
+
+        AtomicInteger serverThreadCount = new AtomicInteger();
+        serverExecutor = Executors.newFixedThreadPool(SERVER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "javadoc-mirror-" + serverThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger prefetchThreadCount = new AtomicInteger();
+        prefetchExecutor = new ThreadPoolExecutor(
+                maxConcurrentPrefetches,
+                maxConcurrentPrefetches,
+                PREFETCH_THREAD_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "javadoc-prefetcher-" + prefetchThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        prefetchExecutor.allowCoreThreadTimeOut(true);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        logger.debug("Javadoc mirror of {} started on port {}", directory, server.getAddress().getPort());
+    }
+
+    /**
+     * Allow a remote Javadoc to be browsed through this mirror. All files located under the directory of
+     * the index page of the Javadoc can then be served by the mirror. Javadocs prefetched by
+     * {@link #prefetch(URI, Executor)} are registered automatically.
+     *
+     * @param javadocUri the URI of the index page of the remote Javadoc. Nothing happens if it doesn't
+     *                   point to an HTTP server
+     */
+    public void register(URI javadocUri) {
+        if (Utils.doesUrilinkToWebsite(javadocUri) && javadocUri.getRawAuthority() != null) {
+            synchronized (this) {
+                registeredBaseUris.add(getBaseUri(javadocUri));
+            }
+        }
+    }
+
+    /**
+     * Get the URI to use to browse a remote file through this mirror.
+     *
+     * @param uri the URI of a remote file
+     * @return the URI of the provided file on the local server of this mirror, or the provided URI
+     * if it doesn't point to an HTTP server or doesn't belong to a registered Javadoc (see {@link #register(URI)})
+     */
+    public URI getLocalUri(URI uri) {
+        if (!Utils.doesUrilinkToWebsite(uri) || uri.getRawAuthority() == null || !isRegistered(uri)) {
+            return uri;
+        }
+
+        return URI.create(String.format(
+                "http://%s:%d/%s/%s%s%s%s",
+                server.getAddress().getHostString(),
+                server.getAddress().getPort(),
+                uri.getScheme(),
+                uri.getRawAuthority(),
+                uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath(),
+                uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery(),
+                uri.getRawFragment() == null ? "" : "#" + uri.getRawFragment()
+        ));
+    }
+
+    /**
+     * Download in the background all pages and assets of a remote Javadoc that can be reached from its
+     * index page, and store them in a compressed archive used by this mirror. If an archive of this Javadoc
+     * already exists, it is replaced once the download is complete. The Javadoc is registered with
+     * {@link #register(URI)}.
+     * <p>
+     * The download fails if the archive would exceed the maximum size set with {@link #setMaxArchiveSize(int, long)}.
+     * Cancelling the returned CompletableFuture interrupts the download.
+     *
+     * @param javadocUri the URI of the index page of the remote Javadoc
+     * @param executor the executor to use to download the Javadoc
+     * @return a CompletableFuture (that may complete exceptionally) with the path of the created archive
+     */
+    public CompletableFuture<Path> prefetch(URI javadocUri, Executor executor) {
+        register(javadocUri);
+
+        return Utils.supplyAsyncInterruptibly(() -> {
+            try {
+                return createArchive(javadocUri);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Load in memory in the background some pages that are likely to be browsed soon, as well as the stylesheets
+     * and scripts they use. The pages are read from the files stored by this mirror or fetched from their
+     * remote server, so that they are served from memory when they are requested.
+     * <p>
+     * Calling this function again discards the pages of the previous call that are not loaded yet, so it
+     * can be called each time the list of likely pages changes.
+     *
+     * @param remoteUris the URIs of the remote pages to prefetch, from the most likely to the least likely.
+     *                   Pages that don't belong to a registered Javadoc (see {@link #register(URI)}) are ignored
+     */
+    public void prefetchPages(List<URI> remoteUris) {
+        long generation = prefetchGeneration.incrementAndGet();
+
+        for (URI uri: remoteUris.stream().map(JavadocMirror::removeFragment).filter(this::isRegistered).distinct().toList()) {
+            try {
+                prefetchExecutor.execute(() -> {
+                    if (prefetchGeneration.get() == generation) {
+                        prefetchPage(uri, generation);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                logger.debug("Cannot prefetch {}: mirror closed", uri, e);
+            }
+        }
+    }
+
+    /**
+     * Set the maximum size of the archives created by {@link #prefetch(URI, Executor)}. A prefetch fails
+     * when the crawled Javadoc exceeds it, so that a site with a very large or unbounded number of pages
+     * cannot fill the disk. By default, an archive contains at most 100,000 files and 2 GB of (uncompressed) content.
+     * <p>
+     * This only applies to prefetches started after this call.
+     *
+     * @param maxFiles the maximum number of files of an archive
+     * @param maxBytes the maximum number of uncompressed bytes of the files of an archive
+     * @throws IllegalArgumentException if maxFiles or maxBytes is less than 1
+     */
+    public synchronized void setMaxArchiveSize(int maxFiles, long maxBytes) {
+        if (maxFiles < 1) {
+            throw new IllegalArgumentException(String.format("The maximum number of files of an archive (%d) must be at least 1", maxFiles));
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException(String.format("The maximum size of an archive (%d) must be at least 1", maxBytes));
+        }
+
+        this.maxArchiveFiles = maxFiles;
+        this.maxArchiveBytes = maxBytes;
+    }
+
+    /**
+     * @return the proportion of requested files that were served from memory, between 0 and 1, or 0
+     * if no file was requested
+     */
+    public double getMemoryHitRate() {
+        return pageCache.getHitRate();
+    }
+
+    /**
+     * @return the number of pages and assets loaded in memory by {@link #prefetchPages(List)}
+     */
+    public long getPrefetchCount() {
+        return pageCache.getPrefetchCount();
+    }
+
+    /**
+     * @return the number of pages and assets loaded by {@link #prefetchPages(List)} that were later requested
+     */
+    public long getPrefetchHitCount() {
+        return pageCache.getPrefetchHitCount();
+    }
+
+    /**
+     * @return the number of pages and assets loaded by {@link #prefetchPages(List)} that were removed
+     * from memory before being requested
+     */
+    public long getPrefetchEvictionCount() {
+        return pageCache.getPrefetchEvictionCount();
+    }
+
+    /**
+     * @return the number of bytes occupied on disk by the files fetched on demand
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return the number of requested files that were not in memory and were read from the files fetched on demand
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of requested files that were not in memory and were read from an archive created
+     * by {@link #prefetch(URI, Executor)}
+     */
+    public synchronized long getArchiveHitCount() {
+        return archiveHitCount;
+    }
+
+    /**
+     * @return the number of files that had to be fetched from their remote server
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Stop the local server of this mirror and close the stored files. Local URIs returned
+     * by {@link #getLocalUri(URI)} cannot be browsed anymore.
+     *
+     * @throws IOException if an error occurs while closing the stored files
+     */
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        Utils.shutdownNow(serverExecutor);
+        Utils.shutdownNow(prefetchExecutor);
+
+        synchronized (this) {
+            for (ZipFile archive: archives.values()) {
+                archive.close();
+            }
+            archives.clear();
+
+            journal.close();
+            writeJournal();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Optional<URI> remoteUri = getRemoteUri(exchange.getRequestURI());
+            if (remoteUri.isEmpty() || !"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (!isRegistered(remoteUri.get())) {
+                logger.debug("{} doesn't belong to a registered Javadoc. Refusing to serve it", remoteUri.get());
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+
+            Optional<PageCache.Page> file = pageCache.get(remoteUri.get());
+            if (file.isEmpty()) {
+                file = getFile(remoteUri.get(), true);
+                file.ifPresent(page -> pageCache.put(remoteUri.get(), page, false));
+            }
+            if (file.isEmpty()) {
+                exchange.sendResponseHeaders(502, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", file.get().contentType());
+            exchange.sendResponseHeaders(200, file.get().size() == 0 ? -1 : file.get().size());
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                file.get().writeTo(outputStream);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void prefetchPage(URI remoteUri, long generation) {
+        if (pageCache.contains(remoteUri)) {
+            return;
+        }
+
+        Optional<PageCache.Page> page = getFile(remoteUri, false);
+        if (page.isEmpty()) {
+            return;
+        }
+        pageCache.put(remoteUri, page.get(), true);
+
+        for (URI link: findLinks(remoteUri, page.get())) {
+            if (prefetchGeneration.get() != generation) {
+                return;
+            }
+
+            String path = link.getPath() == null ? "" : link.getPath();
+            if ((path.endsWith(".css") || path.endsWith(".js")) && !pageCache.contains(link)) {
+                getFile(link, false).ifPresent(asset -> pageCache.put(link, asset, true));
+            }
+        }
+    }
+
+    private Optional<PageCache.Page> getFile(URI remoteUri, boolean requested) {
+        Optional<PageCache.Page> storedFile = readStoredFile(remoteUri, requested);
+        if (storedFile.isPresent()) {
+            return storedFile;
+        }
+
+        Optional<PageCache.Page> archivedFile = readArchivedFile(remoteUri, requested);
+        if (archivedFile.isPresent()) {
+            return archivedFile;
+        }
+
+        Optional<PageCache.Page> remoteFile = fetch(remoteUri);
+        if (remoteFile.isPresent()) {
+            if (requested) {
+                synchronized (this) {
+                    missCount++;
+                }
+            }
+
+            try {
+                store(remoteUri, remoteFile.get());
+            } catch (IOException e) {
+                logger.warn("Cannot store {} in mirror", remoteUri, e);
+            }
+        }
+        return remoteFile;
+    }
+
+    private Optional<PageCache.Page> readStoredFile(URI remoteUri, boolean requested) {
+        StoredFile storedFile;
+        synchronized (this) {
+            storedFile = storedFiles.get(remoteUri);
+            if (storedFile == null) {
+                return Optional.empty();
+            }
+            if (requested) {
+                hitCount++;
+            }
+        }
+
+        try {
+            return Optional.of(new PageCache.Page(Files.readAllBytes(getObjectPath(storedFile.hash())), storedFile.contentType()));
+        } catch (IOException e) {
+            logger.debug("Cannot read stored file of {}", remoteUri, e);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<PageCache.Page> readArchivedFile(URI remoteUri, boolean requested) {
+        ZipFile archive = null;
+        String entryName = null;
+        synchronized (this) {
+            for (Map.Entry<URI, ZipFile> entry: archives.entrySet()) {
+                String baseUri = entry.getKey().toString();
+
+                if (remoteUri.toString().startsWith(baseUri)) {
+                    archive = entry.getValue();
+                    entryName = remoteUri.toString().substring(baseUri.length());
+                    break;
+                }
+            }
+        }
+        if (archive == null) {
+            return Optional.empty();
+        }
+
+        try {
+            ZipEntry entry = archive.getEntry(entryName);
+            if (entry == null) {
+                return Optional.empty();
+            }
+
+            try (InputStream inputStream = archive.getInputStream(entry)) {
+                byte[] content = inputStream.readAllBytes();
+
+                if (requested) {
+                    synchronized (this) {
+                        archiveHitCount++;
+                    }
+                }
+                return Optional.of(new PageCache.Page(content, getContentType(entryName)));
+            }
+        } catch (IOException | IllegalStateException e) {
+            // IllegalStateException is thrown if the archive was closed because it was replaced
+            logger.debug("Cannot read {} from archive", remoteUri, e);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<PageCache.Page> fetch(URI remoteUri) {
+        logger.debug("Fetching {} from remote server", remoteUri);
+
+        CompletableFuture<HttpResponse<byte[]>> request = MirroredFetcher.getInstance().fetch(
+                remoteUri,
+                HttpResponse.BodyHandlers.ofByteArray()
+        );
+        try {
+            HttpResponse<byte[]> response = request.get();
+
+            return Optional.of(new PageCache.Page(
+                    response.body(),
+                    response.headers().firstValue("Content-Type").orElse(getContentType(remoteUri.getPath()))
+            ));
+        } catch (ExecutionException e) {
+            logger.debug("Cannot fetch {}", remoteUri, e);
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            request.cancel(true);
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+
+    private void store(URI remoteUri, PageCache.Page file) throws IOException {
+        String hash = computeHash(file.content());
+        Path objectPath = getObjectPath(hash);
+
+        if (!Files.exists(objectPath)) {
+            Files.createDirectories(objectPath.getParent());
+            Path temporaryPath = Files.createTempFile(objectPath.getParent(), hash, ".tmp");
+            try (OutputStream outputStream = Files.newOutputStream(temporaryPath)) {
+                file.writeTo(outputStream);
+            }
+            Files.move(temporaryPath, objectPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        synchronized (this) {
+            StoredFile storedFile = new StoredFile(hash, file.size(), file.contentType());
+            addStoredFile(remoteUri, storedFile);
+            writeJournalEntry(ADDED_ENTRY, remoteUri, storedFile);
+
+            evictIfNeeded();
+        }
+    }
+
+    private void addStoredFile(URI remoteUri, StoredFile storedFile) {
+        removeStoredFile(remoteUri, false);
+
+        storedFiles.put(remoteUri, storedFile);
+        if (objectReferences.merge(storedFile.hash(), 1, Integer::sum) == 1) {
+            usedBytes += storedFile.size();
+        }
+    }
+
+    private void removeStoredFile(URI remoteUri, boolean deleteObject) {
+        StoredFile storedFile = storedFiles.remove(remoteUri);
+        if (storedFile == null) {
+            return;
+        }
+
+        if (objectReferences.merge(storedFile.hash(), -1, Integer::sum) <= 0) {
+            objectReferences.remove(storedFile.hash());
+            usedBytes -= storedFile.size();
+
+            if (deleteObject) {
+                try {
+                    Files.deleteIfExists(getObjectPath(storedFile.hash()));
+                } catch (IOException e) {
+                    logger.debug("Cannot delete stored file of {}", remoteUri, e);
+                }
+            }
+        }
+    }
+
+    private void evictIfNeeded() {
+        while (usedBytes > maxBytes && !storedFiles.isEmpty()) {
+            URI leastRecentlyUsed = storedFiles.keySet().iterator().next();
+            logger.debug("Mirror uses {} bytes out of {}. Evicting {}", usedBytes, maxBytes, leastRecentlyUsed);
+
+            removeStoredFile(leastRecentlyUsed, true);
+            writeJournalEntry(REMOVED_ENTRY, leastRecentlyUsed, null);
+        }
+    }
+
+    private void writeJournalEntry(String type, URI remoteUri, StoredFile storedFile) {
+        try {
+            if (storedFile == null) {
+                journal.write(String.join("\t", type, remoteUri.toString()));
+            } else {
+                journal.write(String.join(
+                        "\t",
+                        type,
+                        remoteUri.toString(),
+                        storedFile.hash(),
+                        String.valueOf(storedFile.size()),
+                        storedFile.contentType()
+                ));
+            }
+            journal.newLine();
+            journal.flush();
+        } catch (IOException e) {
+            logger.warn("Cannot write to mirror journal", e);
+        }
+    }
+
+    private void readJournal() throws IOException {
+        Path journalPath = directory.resolve(JOURNAL_FILE);
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+
+        for (String line: Files.readAllLines(journalPath, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t");
+
+            try {
+                URI remoteUri = new URI(fields[1]);
+
+                if (ADDED_ENTRY.equals(fields[0]) && fields.length == 5 && Files.exists(getObjectPath(fields[2]))) {
+                    addStoredFile(remoteUri, new StoredFile(fields[2], Long.parseLong(fields[3]), fields[4]));
+                } else if (REMOVED_ENTRY.equals(fields[0])) {
+                    removeStoredFile(remoteUri, false);
+                }
+            } catch (Exception e) {
+                logger.debug("Skipping invalid line {} of mirror journal", line, e);
+            }
+        }
+
+        // Compact the journal, so that it doesn't grow indefinitely
+        writeJournal();
+    }
+
+    private void writeJournal() throws IOException {
+        Path journalPath = directory.resolve(JOURNAL_FILE);
+        Path temporaryPath = Files.createTempFile(directory, JOURNAL_FILE, ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+            for (Map.Entry<URI, StoredFile> entry: storedFiles.entrySet()) {
+                writer.write(String.join(
+                        "\t",
+                        ADDED_ENTRY,
+                        entry.getKey().toString(),
+                        entry.getValue().hash(),
+                        String.valueOf(entry.getValue().size()),
+                        entry.getValue().contentType()
+                ));
+                writer.newLine();
+            }
+        }
+        Files.move(temporaryPath, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void readArchives() throws IOException {
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory.resolve(ARCHIVES_DIRECTORY), "*" + ARCHIVE_EXTENSION)) {
+            for (Path path: paths) {
+                try {
+                    ZipFile archive = new ZipFile(path.toFile());
+
+                    // The comment of an archive is the base URI of its Javadoc
+                    URI baseUri = new URI(archive.getComment());
+                    archives.put(baseUri, archive);
+                    registeredBaseUris.add(baseUri);
+                } catch (Exception e) {
+                    logger.warn("Cannot read mirror archive {}. Skipping it", path, e);
+                }
+            }
+        }
+    }
+
+    private Path createArchive(URI javadocUri) throws IOException {
+        URI baseUri = getBaseUri(javadocUri);
+        int maxFiles;
+        long maxBytes;
+        synchronized (this) {
+            maxFiles = maxArchiveFiles;
+            maxBytes = maxArchiveBytes;
+        }
+        Path archivePath = directory.resolve(ARCHIVES_DIRECTORY).resolve(computeHash(ByteBuffer.wrap(baseUri.toString().getBytes(StandardCharsets.UTF_8))) + ARCHIVE_EXTENSION);
+        Path temporaryPath = Files.createTempFile(archivePath.getParent(), "prefetch", ".tmp");
+        logger.debug("Prefetching {} to {}", baseUri, archivePath);
+
+        int numberOfFiles = 0;
+        long numberOfBytes = 0;
+        try (ZipOutputStream outputStream = new ZipOutputStream(Files.newOutputStream(temporaryPath))) {
+            outputStream.setComment(baseUri.toString());
+
+            // The index of all elements links to the pages of all elements, so it is always crawled
+            Queue<URI> urisToFetch = new ArrayDeque<>(new LinkedHashSet<>(List.of(javadocUri, baseUri.resolve(INDEX_ALL_PAGE))));
+            Set<URI> visitedUris = new HashSet<>(urisToFetch);
+            while (!urisToFetch.isEmpty()) {
+                Utils.checkNotInterrupted(baseUri);
+                URI uri = urisToFetch.remove();
+
+                Optional<PageCache.Page> file = readStoredFile(uri, false).or(() -> fetch(uri));
+                if (file.isEmpty()) {
+                    continue;
+                }
+
+                numberOfFiles++;
+                numberOfBytes += file.get().size();
+                if (numberOfFiles > maxFiles || numberOfBytes > maxBytes) {
+                    throw new IOException(String.format(
+                            "%s has more than %d files or %d bytes. Stopping prefetch",
+                            baseUri,
+                            maxFiles,
+                            maxBytes
+                    ));
+                }
+
+                outputStream.putNextEntry(new ZipEntry(uri.toString().substring(baseUri.toString().length())));
+                file.get().writeTo(outputStream);
+                outputStream.closeEntry();
+
+                for (URI link: findLinks(uri, file.get())) {
+                    if (link.toString().startsWith(baseUri.toString()) && visitedUris.add(link)) {
+                        urisToFetch.add(link);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaryPath);
+            throw e;
+        }
+
+        synchronized (this) {
+            Files.move(temporaryPath, archivePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            ZipFile previousArchive = archives.put(baseUri, new ZipFile(archivePath.toFile()));
+            if (previousArchive != null) {
+                previousArchive.close();
+            }
+        }
+        logger.info("{} files of {} prefetched to {}", numberOfFiles, baseUri, archivePath);
+
+        return archivePath;
+    }
+
+    private Optional<URI> getRemoteUri(URI localUri) {
+        // Local paths are "/scheme/authority/path"
+        String path = localUri.getRawPath();
+        String[] segments = path.split("/", 4);
+        if (segments.length < 3 || !Utils.doesUrilinkToWebsite(URI.create(segments[1] + "://x"))) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(new URI(String.format(
+                    "%s://%s/%s%s",
+                    segments[1],
+                    segments[2],
+                    segments.length > 3 ? segments[3] : "",
+                    localUri.getRawQuery() == null ? "" : "?" + localUri.getRawQuery()
+            )));
+        } catch (Exception e) {
+            logger.debug("Cannot convert {} to remote URI", localUri, e);
+            return Optional.empty();
+        }
+    }
+
+    private synchronized boolean isRegistered(URI remoteUri) {
+        String uri = remoteUri.normalize().toString();
+
+        return registeredBaseUris.stream().anyMatch(baseUri -> uri.startsWith(baseUri.toString()));
+    }
+
+    private static URI getBaseUri(URI javadocUri) {
+        // The base URI is the directory of the index page, so it always contains the authority and ends with '/'
+        URI uri = javadocUri.normalize();
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+
+        return URI.create(String.format(
+                "%s://%s%s",
+                uri.getScheme(),
+                uri.getRawAuthority(),
+                path.lastIndexOf('/') == -1 ? "/" : path.substring(0, path.lastIndexOf('/') + 1)
+        ));
+    }
+
+    private static URI removeFragment(URI uri) {
+        String link = uri.toString();
+        int fragmentIndex = link.indexOf('#');
+
+        return fragmentIndex == -1 ? uri : URI.create(link.substring(0, fragmentIndex));
+    }
+
+    private Path getObjectPath(String hash) {
+        return directory.resolve(OBJECTS_DIRECTORY).resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static List<URI> findLinks(URI uri, PageCache.Page file) {
+        if (!file.contentType().contains("html") && !file.contentType().contains("css")) {
+            return List.of();
+        }
+
+        Matcher matcher = LINK_PATTERN.matcher(StandardCharsets.UTF_8.decode(file.content()));
+        Set<URI> links = new HashSet<>();
+        while (matcher.find()) {
+            String link = matcher.group(1) == null ? matcher.group(2) : matcher.group(1);
+
+            try {
+                links.add(uri.resolve(link.strip()).normalize());
+            } catch (IllegalArgumentException e) {
+                logger.debug("Cannot resolve link {} of {}", link, uri, e);
+            }
+        }
+        return List.copyOf(links);
+    }
+
+    private static String getContentType(String path) {
+        if (path == null) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+
+        int extensionIndex = path.lastIndexOf('.');
+        return extensionIndex == -1 ?
+                DEFAULT_CONTENT_TYPE :
+                CONTENT_TYPES.getOrDefault(path.substring(extensionIndex + 1).toLowerCase(), DEFAULT_CONTENT_TYPE);
+    }
+
+    private static String computeHash(ByteBuffer content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package qupath.ui.javadocviewer.core;
+
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Options restricting the {@link JavadocElement JavadocElements} read from a Javadoc.
+ * <p>
+ * Options are applied while the index page of a Javadoc is parsed (or while a Javadoc is read from
+ * a {@link JavadocIndexBundle}), so rejected elements are never created. The category of an element
+ * is checked first, then its name.
+ * <p>
+ * Two options with the same components are equal, so options can be used as part of a cache key.
+ *
+ * @param includedCategories the categories (for example "Class" or "Method") of the elements to keep.
+ *                           If empty, elements of all categories are kept (except the excluded ones)
+ * @param excludedCategories the categories of the elements to skip
+ * @param namePattern a regular expression that must be found in the name of an element for the element
+ *                    to be kept (see {@link java.util.regex.Matcher#find()}). Can be null to keep all names
+ * @param maxElements the maximum number of elements to read from a Javadoc. Elements after this limit
+ *                    (in the order of the index page) are skipped
+ */
+public record JavadocParseOptions(
+        Set<String> includedCategories,
+        Set<String> excludedCategories,
+        String namePattern,
+        int maxElements
+) {
+
+    /**
+     * Options keeping all elements.
+     */
+    public static final JavadocParseOptions ALL_ELEMENTS = new JavadocParseOptions(Set.of(), Set.of(), null, Integer.MAX_VALUE);
+
+    /**
+     * Create the options.
+     *
+     * @throws NullPointerException if one of the provided sets is null
+     * @throws IllegalArgumentException if maxElements is negative or if namePattern is not a valid regular expression
+     */
+    public JavadocParseOptions {
+        if (maxElements < 0) {
+            throw new IllegalArgumentException(String.format("The maximum number of elements (%d) cannot be negative", maxElements));
+        }
+        if (namePattern != null) {
+            Pattern.compile(namePattern);
+        }
+
+        includedCategories = Set.copyOf(includedCategories);
+        excludedCategories = Set.copyOf(excludedCategories);
+    }
+
+    /**
+     * Create options that skip the elements of the provided categories.
+     *
+     * @param excludedCategories the categories of the elements to skip
+     * @return options keeping all elements except the ones belonging to the provided categories
+     */
+    public static JavadocParseOptions excluding(Set<String> excludedCategories) {
+        return new JavadocParseOptions(Set.of(), excludedCategories, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Indicate whether elements of a category should be kept.
+     *
+     * @param category the category to check
+     * @return whether elements of the provided category should be kept
+     */
+    public boolean acceptsCategory(String category) {
+        return (includedCategories.isEmpty() || includedCategories.contains(category)) && !excludedCategories.contains(category);
+    }
+
+    /**
+     * Create a predicate telling whether an element should be kept according to its name. The regular expression
+     * is compiled each time this function is called, so callers should keep a reference to the returned predicate.
+     *
+     * @return a predicate telling whether an element whose name is given to the predicate should be kept
+     */
+    public Predicate<String> createNameFilter() {
+        if (namePattern == null) {
+            return name -> true;
+        } else {
+            return Pattern.compile(namePattern).asPredicate();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package qupath.ui.javadocviewer.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * A process-wide registry of {@link JavadocSymbolIndex indexed Javadocs}, shared by all consumers
+ * that need the elements of the same Javadocs.
+ * <p>
+ * A Javadoc is read and indexed only once, even if several consumers request it at the same time:
+ * they all receive the same (immutable) {@link JavadocSymbolIndex}. Each call to {@link #acquire(URI, JavadocIndexBundle)}
+ * must be balanced by a call to {@link #release(URI)}. When a Javadoc is not used by any consumer anymore,
+ * it is removed from the registry (and its loading is cancelled if it was still in progress: the tasks
+ * reading and indexing it are interrupted).
+ * <p>
+ * Javadocs are registered by URI and {@link JavadocParseOptions}: consumers requesting the same Javadoc with
+ * different options receive different instances.
+ * <p>
+ * A Javadoc is read and indexed by the executor given by the consumer that starts its loading, so that
+ * the CPU usage of the loading stays within the budget of this consumer (for example a limited number of
+ * low priority threads). A shared loading must however not depend on an executor that its first consumer
+ * may shut down while other consumers are waiting for it: tasks rejected by the executor of the consumer
+ * are run by a pool of daemon threads owned by the registry (with as many threads as available processors),
+ * which is also used when no executor is provided.
+ * <p>
+ * Releasing a Javadoc only cancels its loading when no other consumer uses it. {@link #close()} cancels
+ * all loadings in progress, whatever their consumers, and stops the threads of the registry. It is meant
+ * to be called when the application stops.
+ * <p>
+ * This class is thread-safe.
+ */
+public class JavadocRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(JavadocRegistry.class);
+    private static final JavadocRegistry instance = new JavadocRegistry();
+    private final Map<Key, RegisteredJavadoc> javadocs = new HashMap<>();
+    private final ThreadPoolExecutor executor = Utils.createDaemonPool("javadoc-registry");
+    private boolean closed = false;
+    private record Key(URI uri, JavadocParseOptions options) {}
+    private static class RegisteredJavadoc {
+
+        private CompletableFuture<JavadocSymbolIndex> javadoc;
+        private int references = 0;
+    }
+
+    private JavadocRegistry() {}
+
+    /**
+     * @return the process-wide instance of the registry
+     */
+    public static JavadocRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get a Javadoc and register the caller as a consumer of it. If the Javadoc is already
+     * registered (loaded or being loaded), the shared instance is returned. Otherwise, it is read
+     * with {@link JavadocsFinder#readJavadoc(URI, JavadocIndexBundle, Executor)} and indexed by the threads
+     * of the registry.
+     * <p>
+     * If the loading failed, the Javadoc is loaded again by the next call to this function.
+     *
+     * @param uri the URI of the index page of the Javadoc
+     * @param indexBundle a bundle containing prebuilt elements of some Javadocs. Can be null. This is only
+     *                    used if the Javadoc is not already registered
+     * @return a CompletableFuture (that may complete exceptionally) with the indexed Javadoc. Cancelling it
+     * doesn't cancel the loading of the Javadoc for other consumers
+     */
+    public CompletableFuture<JavadocSymbolIndex> acquire(URI uri, JavadocIndexBundle indexBundle) {
+        return acquire(uri, indexBundle, JavadocParseOptions.ALL_ELEMENTS);
+    }
+
+    /**
+     * Same as {@link #acquire(URI, JavadocIndexBundle)}, but only keeping the elements of the Javadoc
+     * accepted by the provided options. This call must be balanced by a call to {@link #release(URI, JavadocParseOptions)}
+     * with the same options.
+     *
+     * @param uri the URI of the index page of the Javadoc
+     * @param indexBundle a bundle containing prebuilt elements of some Javadocs. Can be null. This is only
+     *                    used if the Javadoc is not already registered
+     * @param options the options restricting the elements of the Javadoc
+     * @return a CompletableFuture (that may complete exceptionally) with the indexed Javadoc. Cancelling it
+     * doesn't cancel the loading of the Javadoc for other consumers
+     */
+    public CompletableFuture<JavadocSymbolIndex> acquire(URI uri, JavadocIndexBundle indexBundle, JavadocParseOptions options) {
+        return acquire(uri, indexBundle, options, executor);
+    }
+
+    /**
+     * Same as {@link #acquire(URI, JavadocIndexBundle, JavadocParseOptions)}, but reading and indexing the
+     * Javadoc with the provided executor if it is not already registered. Tasks rejected by the provided
+     * executor (for example because it was shut down while the Javadoc is shared with other consumers) are
+     * run by the threads of the registry.
+     * <p>
+     * If the Javadoc is already registered, its loading keeps running on the executor of the consumer that
+     * started it.
+     *
+     * @param uri the URI of the index page of the Javadoc
+     * @param indexBundle a bundle containing prebuilt elements of some Javadocs. Can be null. This is only
+     *                    used if the Javadoc is not already registered
+     * @param options the options restricting the elements of the Javadoc
+     * @param executor the executor to use to read and index the Javadoc
+     * @return a CompletableFuture (that may complete exceptionally) with the indexed Javadoc. Cancelling it
+     * doesn't cancel the loading of the Javadoc for other consumers. It completes exceptionally with an
+     * {@link IllegalStateException} if this registry is closed
+     */
+    public synchronized CompletableFuture<JavadocSymbolIndex> acquire(
+            URI uri,
+            JavadocIndexBundle indexBundle,
+            JavadocParseOptions options,
+            Executor executor
+    ) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException(String.format("Cannot load %s: registry closed", uri)));
+        }
+        RegisteredJavadoc registeredJavadoc = javadocs.computeIfAbsent(new Key(uri, options), k -> new RegisteredJavadoc());
+
+        if (registeredJavadoc.javadoc == null || registeredJavadoc.javadoc.isCompletedExceptionally()) {
+            logger.debug("{} not loaded yet. Loading it", uri);
+
+            Executor loadingExecutor = withFallback(executor);
+            registeredJavadoc.javadoc = Utils.composeCancellable(
+                    JavadocsFinder.readJavadoc(uri, indexBundle, options, loadingExecutor),
+                    javadoc -> Utils.supplyAsyncInterruptibly(() -> JavadocSymbolIndex.create(javadoc), loadingExecutor)
+            );
+        } else {
+            logger.debug("{} already registered. It now has {} consumers", uri, registeredJavadoc.references + 1);
+        }
+        registeredJavadoc.references++;
+
+        return registeredJavadoc.javadoc.copy();
+    }
+
+    /**
+     * Register a consumer of a Javadoc that the consumer already has in memory, for example because it read
+     * the Javadoc again from disk after releasing it. If the Javadoc is already registered with the same options
+     * and loaded, the registered instance is returned and should be used instead of the provided one, so that
+     * consumers keep sharing the same elements. Otherwise, the provided instance is registered (and given to the
+     * consumers waiting for a loading in progress) and returned.
+     * <p>
+     * This call must be balanced by a call to {@link #release(URI, JavadocParseOptions)} with the same options.
+     *
+     * @param javadoc the Javadoc the consumer has in memory
+     * @param options the options the provided Javadoc was read with
+     * @return the instance of the Javadoc the consumer should use. It is the provided instance if this registry
+     * is closed
+     */
+    public synchronized JavadocSymbolIndex acquire(JavadocSymbolIndex javadoc, JavadocParseOptions options) {
+        URI uri = javadoc.getJavadoc().uri();
+        if (closed) {
+            return javadoc;
+        }
+        RegisteredJavadoc registeredJavadoc = javadocs.computeIfAbsent(new Key(uri, options), k -> new RegisteredJavadoc());
+        registeredJavadoc.references++;
+
+        if (registeredJavadoc.javadoc == null || registeredJavadoc.javadoc.isCompletedExceptionally()) {
+            logger.debug("{} not registered. Registering the instance of a consumer", uri);
+            registeredJavadoc.javadoc = CompletableFuture.completedFuture(javadoc);
+            return javadoc;
+        } else if (registeredJavadoc.javadoc.complete(javadoc)) {
+            logger.debug("{} being loaded. Giving the instance of a consumer to the other consumers", uri);
+            return javadoc;
+        } else {
+            logger.debug("{} already registered. It now has {} consumers", uri, registeredJavadoc.references);
+            return registeredJavadoc.javadoc.join();
+        }
+    }
+
+    /**
+     * Unregister a consumer of a Javadoc previously acquired with {@link #acquire(URI, JavadocIndexBundle)}.
+     * If the Javadoc doesn't have any consumer anymore, it is removed from the registry.
+     *
+     * @param uri the URI of the index page of the Javadoc
+     */
+    public void release(URI uri) {
+        release(uri, JavadocParseOptions.ALL_ELEMENTS);
+    }
+
+    /**
+     * Unregister a consumer of a Javadoc previously acquired with {@link #acquire(URI, JavadocIndexBundle, JavadocParseOptions)}.
+     * If the Javadoc doesn't have any consumer anymore, it is removed from the registry.
+     *
+     * @param uri the URI of the index page of the Javadoc
+     * @param options the options given when the Javadoc was acquired
+     */
+    public synchronized void release(URI uri, JavadocParseOptions options) {
+        Key key = new Key(uri, options);
+        RegisteredJavadoc registeredJavadoc = javadocs.get(key);
+        if (registeredJavadoc == null) {
+            return;
+        }
+
+        registeredJavadoc.references--;
+        if (registeredJavadoc.references <= 0) {
+            logger.debug("{} doesn't have any consumer anymore. Removing it", uri);
+
+            javadocs.remove(key);
+            registeredJavadoc.javadoc.cancel(true);
+        }
+    }
+
+    /**
+     * Get the number of consumers of a Javadoc.
+     *
+     * @param uri the URI of the index page of the Javadoc
+     * @return the number of consumers of the Javadoc, or 0 if it is not registered
+     */
+    public int getReferenceCount(URI uri) {
+        return getReferenceCount(uri, JavadocParseOptions.ALL_ELEMENTS);
+    }
+
+    /**
+     * Get the number of consumers of a Javadoc acquired with some options.
+     *
+     * @param uri the URI of the index page of the Javadoc
+     * @param options the options given when the Javadoc was acquired
+     * @return the number of consumers of the Javadoc, or 0 if it is not registered with these options
+     */
+    public synchronized int getReferenceCount(URI uri, JavadocParseOptions options) {
+        RegisteredJavadoc registeredJavadoc = javadocs.get(new Key(uri, options));
+        return registeredJavadoc == null ? 0 : registeredJavadoc.references;
+    }
+
+    /**
+     * Cancel the loading of all Javadocs still being loaded, unregister all Javadocs, and stop the threads
+     * of this registry.
+     * <p>
+     * Cancelling a loading interrupts the tasks reading and indexing the Javadoc, whatever the executor
+     * running them, and its consumers receive a {@link java.util.concurrent.CancellationException}. The
+     * executors given by consumers are not shut down, and Javadocs already loaded stay usable by their consumers.
+     * <p>
+     * Javadocs cannot be loaded by this registry after this call (see {@link #acquire(URI, JavadocIndexBundle, JavadocParseOptions, Executor)}).
+     * Calling this function several times has no effect.
+     */
+    public void close() {
+        List<CompletableFuture<JavadocSymbolIndex>> loadings;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            loadings = javadocs.values().stream().map(registeredJavadoc -> registeredJavadoc.javadoc).toList();
+            javadocs.clear();
+        }
+        logger.debug("Javadoc registry closed. Cancelling {} loadings", loadings.stream().filter(loading -> !loading.isDone()).count());
+
+        for (CompletableFuture<JavadocSymbolIndex> loading: loadings) {
+            loading.cancel(true);
+        }
+        Utils.shutdownNow(executor);
+    }
+
+    private Executor withFallback(Executor consumerExecutor) {
+        if (consumerExecutor == executor) {
+            return executor;
+        }
+
+        return task -> {
+            try {
+                consumerExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                logger.debug("Task rejected by the executor of a consumer. Running it on the threads of the registry", e);
+                executor.execute(task);
+            }
+        };
+    }
+}
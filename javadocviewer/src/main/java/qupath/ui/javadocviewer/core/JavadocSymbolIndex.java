@@ -0,0 +1,179 @@
+package qupath.ui.javadocviewer.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A hashed index of the {@link JavadocElement JavadocElements} of a {@link Javadoc}, allowing to
+ * find elements from Java symbols in constant time.
+ * <p>
+ * An element can be found from:
+ * <ul>
+ *     <li>Its fully qualified name, for example {@code qupath.lib.images.servers.ImageServer} or
+ *     {@code qupath.lib.images.servers.ImageServer.getPixelType}.</li>
+ *     <li>Its simple name, for example {@code ImageServer}, {@code ImageServer.getPixelType} or {@code getPixelType}.</li>
+ *     <li>Its name as written in the Javadoc, for example {@code ImageServer.getPixelType()}.</li>
+ * </ul>
+ * Members can also be separated from their class with {@code #} instead of {@code .}, and parameters
+ * can be omitted. Lookups are case-sensitive.
+ * <p>
+ * The packages documented by the Javadoc are also recorded (see {@link #getPackages()}), so that the Javadoc
+ * owning a fully qualified name can be found without looking the name up in every Javadoc.
+ * <p>
+ * This class is immutable and thread-safe.
+ */
+public class JavadocSymbolIndex {
+
+    private static final String CONSTRUCTOR_CATEGORY = "Constructor";
+    private static final String CONSTRUCTOR_FRAGMENT = "<init>";
+    private static final String SUMMARY_PAGE_SUFFIX = "-summary";
+    private static final String HTML_EXTENSION = ".html";
+    private final Javadoc javadoc;
+    private final Map<String, List<JavadocElement>> elementsBySymbol;
+    private final Set<String> packages;
+
+    private JavadocSymbolIndex(Javadoc javadoc, Map<String, List<JavadocElement>> elementsBySymbol, Set<String> packages) {
+        this.javadoc = javadoc;
+        this.elementsBySymbol = elementsBySymbol;
+        this.packages = packages;
+    }
+
+    /**
+     * Create the index of the provided Javadoc. This iterates over all elements of the
+     * Javadoc, so it should be called from a background thread for large Javadocs.
+     *
+     * @param javadoc the Javadoc to index
+     * @return the index of the provided Javadoc
+     * @throws java.util.concurrent.CancellationException if the current thread is interrupted while indexing
+     */
+    public static JavadocSymbolIndex create(Javadoc javadoc) {
+        String baseUri = javadoc.uri().toString().substring(0, javadoc.uri().toString().lastIndexOf('/') + 1);
+        Map<String, List<JavadocElement>> elementsBySymbol = new HashMap<>();
+        Set<String> packages = new HashSet<>();
+
+        for (JavadocElement element: javadoc.elements()) {
+            Utils.checkNotInterrupted(javadoc.uri());
+
+            for (String symbol: getSymbols(baseUri, element)) {
+                elementsBySymbol.computeIfAbsent(symbol, s -> new ArrayList<>(1)).add(element);
+            }
+
+            String[] segments = getPageSegments(baseUri, element);
+            int firstPackageSegment = getFirstPackageSegment(segments);
+            if (segments.length - 1 > firstPackageSegment) {
+                packages.add(String.join(".", List.of(segments).subList(firstPackageSegment, segments.length - 1)));
+            }
+        }
+        elementsBySymbol.replaceAll((symbol, elements) -> List.copyOf(elements));
+
+        return new JavadocSymbolIndex(javadoc, elementsBySymbol, Set.copyOf(packages));
+    }
+
+    /**
+     * @return the Javadoc indexed by this index
+     */
+    public Javadoc getJavadoc() {
+        return javadoc;
+    }
+
+    /**
+     * @return an unmodifiable set containing the names of the packages the elements of the indexed Javadoc
+     * belong to (for example {@code qupath.lib.images.servers})
+     */
+    public Set<String> getPackages() {
+        return packages;
+    }
+
+    /**
+     * Find the elements corresponding to a symbol.
+     *
+     * @param symbol the symbol to search for (see the description of this class for the accepted formats)
+     * @return an unmodifiable list of elements corresponding to the provided symbol. It is empty if no element
+     * was found, and contains more than one element if the symbol is ambiguous
+     */
+    public List<JavadocElement> lookup(String symbol) {
+        String normalizedSymbol = symbol.strip().replace('#', '.');
+
+        List<JavadocElement> elements = elementsBySymbol.get(normalizedSymbol);
+        if (elements == null && normalizedSymbol.contains("(")) {
+            elements = elementsBySymbol.get(removeParameters(normalizedSymbol));
+        }
+        return elements == null ? List.of() : elements;
+    }
+
+    private static Set<String> getSymbols(String baseUri, JavadocElement element) {
+        Set<String> symbols = new LinkedHashSet<>();
+        symbols.add(element.name());
+        if (!CONSTRUCTOR_CATEGORY.equals(element.category())) {
+            // Constructors without parameters would have the same symbol as their class
+            symbols.add(removeParameters(element.name()));
+        }
+
+        String[] segments = getPageSegments(baseUri, element);
+        if (segments.length == 0 || segments[segments.length - 1].endsWith(SUMMARY_PAGE_SUFFIX)) {
+            return symbols;
+        }
+
+        int firstPackageSegment = getFirstPackageSegment(segments);
+        String fullyQualifiedType = String.join(".", List.of(segments).subList(firstPackageSegment, segments.length));
+        String simpleType = segments[segments.length - 1];
+
+        String member = element.uri().getFragment();
+        if (member == null || member.isEmpty()) {
+            symbols.add(fullyQualifiedType);
+            symbols.add(simpleType);
+            if (simpleType.contains(".")) {
+                // Nested type ("Outer.Inner"). Retain "Inner"
+                symbols.add(simpleType.substring(simpleType.lastIndexOf('.') + 1));
+            }
+        } else if (member.startsWith(CONSTRUCTOR_FRAGMENT)) {
+            String parameters = member.substring(CONSTRUCTOR_FRAGMENT.length());
+            symbols.add(fullyQualifiedType + parameters);
+            symbols.add(simpleType + parameters);
+        } else {
+            String memberName = removeParameters(member);
+            symbols.add(fullyQualifiedType + "." + member);
+            symbols.add(fullyQualifiedType + "." + memberName);
+            symbols.add(simpleType + "." + memberName);
+            symbols.add(memberName);
+        }
+
+        return symbols;
+    }
+
+    private static String[] getPageSegments(String baseUri, JavadocElement element) {
+        String link = element.uri().toString();
+        if (!link.startsWith(baseUri)) {
+            return new String[0];
+        }
+        String path = link.substring(baseUri.length());
+        int fragmentIndex = path.indexOf('#');
+        if (fragmentIndex > -1) {
+            path = path.substring(0, fragmentIndex);
+        }
+        if (!path.endsWith(HTML_EXTENSION)) {
+            return new String[0];
+        }
+
+        // Path is "some/package/Class.html" or "module.name/some/package/Class.html"
+        return path.substring(0, path.length() - HTML_EXTENSION.length()).split("/");
+    }
+
+    private static int getFirstPackageSegment(String[] segments) {
+        return segments.length > 1 && segments[0].contains(".") ? 1 : 0;
+    }
+
+    private static String removeParameters(String name) {
+        // Old Javadocs write parameters with dashes ("function-int-")
+        int parametersIndex = name.indexOf('(');
+        if (parametersIndex == -1) {
+            parametersIndex = name.indexOf('-');
+        }
+        return parametersIndex > -1 ? name.substring(0, parametersIndex) : name;
+    }
+}
@@ -5,17 +5,26 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLConnection;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.zip.ZipFile;
 
@@ -26,42 +35,238 @@ public class JavadocsFinder {
 
     private static final Logger logger = LoggerFactory.getLogger(JavadocsFinder.class);
     private static final String JAVADOC_INDEX_FILE = "index.html";
+    private static final List<String> PACKAGE_LIST_FILES = List.of("element-list", "package-list");
+    private static final String MODULE_PREFIX = "module:";
     private static final List<String> ARCHIVE_EXTENSIONS = List.of(".jar", ".zip");
     private static final int SEARCH_DEPTH = 4;
+    private static final ThreadPoolExecutor defaultExecutor = Utils.createDaemonPool("javadoc-loader");
 
     private JavadocsFinder() {
         throw new AssertionError("This class is not instantiable.");
     }
 
+    /**
+     * Get the executor used by the functions of this library when no executor is provided.
+     * <p>
+     * It is a pool of daemon threads dedicated to the loading of Javadocs (so that loading Javadocs
+     * doesn't compete with other users of {@link java.util.concurrent.ForkJoinPool#commonPool()}), with
+     * as many threads as available processors. Idle threads are stopped after 30 seconds.
+     *
+     * @return the default executor of this library
+     */
+    public static Executor getDefaultExecutor() {
+        return defaultExecutor;
+    }
+
     /**
      * Asynchronously search for Javadocs in the specified URIs.
+     * <p>
+     * Cancelling the returned CompletableFuture stops the search and the reading of the Javadocs.
      *
      * @param urisToSearch URIs to search for Javadocs. It can be a directory, an HTTP link,
      *                     a link to a jar file...
      * @return a CompletableFuture with the list of Javadocs found
      */
     public static CompletableFuture<List<Javadoc>> findJavadocs(URI... urisToSearch) {
-        return CompletableFuture.supplyAsync(() -> Arrays.stream(urisToSearch)
+        return findJavadocs(null, urisToSearch);
+    }
+
+    /**
+     * Asynchronously search for Javadocs in the specified URIs. The elements of the Javadocs
+     * contained in the provided bundle are read from the bundle, while the elements of other Javadocs
+     * are parsed from their index page.
+     * <p>
+     * Cancelling the returned CompletableFuture stops the search and the reading of the Javadocs.
+     *
+     * @param indexBundle a bundle containing prebuilt elements of some Javadocs. Can be null
+     * @param urisToSearch URIs to search for Javadocs. It can be a directory, an HTTP link,
+     *                     a link to a jar file...
+     * @return a CompletableFuture with the list of Javadocs found
+     */
+    public static CompletableFuture<List<Javadoc>> findJavadocs(JavadocIndexBundle indexBundle, URI... urisToSearch) {
+        return findJavadocs(defaultExecutor, indexBundle, urisToSearch);
+    }
+
+    /**
+     * Asynchronously search for Javadocs in the specified URIs, using the provided executor to search
+     * for Javadocs and to read their elements. Javadocs are read in parallel, so the number of threads
+     * of the provided executor limits the CPU usage of this function.
+     * See {@link #findJavadocs(JavadocIndexBundle, URI...)} for more information.
+     * <p>
+     * Cancelling the returned CompletableFuture interrupts the tasks it submitted to the executor.
+     *
+     * @param executor the executor to use to search for Javadocs and read their elements
+     * @param indexBundle a bundle containing prebuilt elements of some Javadocs. Can be null
+     * @param urisToSearch URIs to search for Javadocs. It can be a directory, an HTTP link,
+     *                     a link to a jar file...
+     * @return a CompletableFuture with the list of Javadocs found
+     */
+    public static CompletableFuture<List<Javadoc>> findJavadocs(Executor executor, JavadocIndexBundle indexBundle, URI... urisToSearch) {
+        return findJavadocs(executor, indexBundle, JavadocParseOptions.ALL_ELEMENTS, urisToSearch);
+    }
+
+    /**
+     * Asynchronously search for Javadocs in the specified URIs, only keeping the elements accepted
+     * by the provided options. See {@link #findJavadocs(Executor, JavadocIndexBundle, URI...)} for
+     * more information.
+     *
+     * @param executor the executor to use to search for Javadocs and read their elements
+     * @param indexBundle a bundle containing prebuilt elements of some Javadocs. Can be null
+     * @param options the options restricting the elements to read. They are applied while the Javadocs are parsed
+     * @param urisToSearch URIs to search for Javadocs. It can be a directory, an HTTP link,
+     *                     a link to a jar file...
+     * @return a CompletableFuture with the list of Javadocs found
+     */
+    public static CompletableFuture<List<Javadoc>> findJavadocs(
+            Executor executor,
+            JavadocIndexBundle indexBundle,
+            JavadocParseOptions options,
+            URI... urisToSearch
+    ) {
+        return Utils.composeCancellable(findJavadocUris(executor, urisToSearch), javadocUris -> {
+            List<CompletableFuture<Javadoc>> readings = new ArrayList<>();
+            List<CompletableFuture<Javadoc>> javadocs = new ArrayList<>();
+            for (URI uri: javadocUris) {
+                CompletableFuture<Javadoc> reading = readJavadoc(uri, indexBundle, options, executor);
+
+                readings.add(reading);
+                javadocs.add(reading.exceptionally(e -> {
+                    logger.debug("Error when creating javadoc of {}. Skipping it", uri, e);
+                    return null;
+                }));
+            }
+
+            CompletableFuture<List<Javadoc>> allJavadocs = CompletableFuture.allOf(javadocs.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(v -> javadocs.stream()
+                            .map(CompletableFuture::join)
+                            .filter(Objects::nonNull)
+                            .distinct()
+                            .toList()
+                    );
+            allJavadocs.whenComplete((result, error) -> {
+                if (allJavadocs.isCancelled()) {
+                    readings.forEach(reading -> reading.cancel(true));
+                }
+            });
+            return allJavadocs;
+        });
+    }
+
+    /**
+     * Asynchronously search for the URIs of the index pages of the Javadocs contained in the specified URIs,
+     * without reading the elements of the Javadocs. Each returned URI can then be given to
+     * {@link #readJavadoc(URI, JavadocIndexBundle, Executor)}.
+     * <p>
+     * Cancelling the returned CompletableFuture interrupts the search.
+     *
+     * @param executor the executor to use to search for Javadocs
+     * @param urisToSearch URIs to search for Javadocs. It can be a directory, an HTTP link,
+     *                     a link to a jar file...
+     * @return a CompletableFuture with the list of distinct URIs of the Javadocs found
+     */
+    public static CompletableFuture<List<URI>> findJavadocUris(Executor executor, URI... urisToSearch) {
+        return Utils.supplyAsyncInterruptibly(() -> Arrays.stream(urisToSearch)
                 .map(JavadocsFinder::findJavadocUrisFromUri)
                 .flatMap(List::stream)
-                .map(uri -> {
-                    try {
-                        return Javadoc.create(uri).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        if (e instanceof InterruptedException) {
-                            Thread.currentThread().interrupt();
-                        }
-                        logger.debug("Error when creating javadoc of {}. Skipping it", uri, e);
-
-                        return null;
-                    }
-                })
-                .filter(Objects::nonNull)
                 .distinct()
-                .toList()
+                .toList(), executor
+        );
+    }
+
+    /**
+     * Asynchronously read the elements of a Javadoc found by {@link #findJavadocUris(Executor, URI...)}.
+     * If the provided bundle contains the Javadoc, its elements are read from the bundle. Otherwise,
+     * they are parsed from the index page of the Javadoc (see {@link Javadoc#create(URI, Executor)}).
+     * <p>
+     * Note that exception handling is left to the caller (the returned CompletableFuture may
+     * complete exceptionally if the elements of the Javadoc cannot be retrieved for example).
+     * Cancelling the returned CompletableFuture stops the reading of the Javadoc.
+     *
+     * @param uri the URI of the index page of the Javadoc
+     * @param indexBundle a bundle containing prebuilt elements of some Javadocs. Can be null
+     * @param executor the executor to use to read the elements
+     * @return a CompletableFuture (that may complete exceptionally) with the Javadoc
+     */
+    public static CompletableFuture<Javadoc> readJavadoc(URI uri, JavadocIndexBundle indexBundle, Executor executor) {
+        return readJavadoc(uri, indexBundle, JavadocParseOptions.ALL_ELEMENTS, executor);
+    }
+
+    /**
+     * Asynchronously read the elements of a Javadoc, only keeping the elements accepted by the provided options.
+     * See {@link #readJavadoc(URI, JavadocIndexBundle, Executor)} for more information.
+     *
+     * @param uri the URI of the index page of the Javadoc
+     * @param indexBundle a bundle containing prebuilt elements of some Javadocs. Can be null
+     * @param options the options restricting the elements to read
+     * @param executor the executor to use to read the elements
+     * @return a CompletableFuture (that may complete exceptionally) with the Javadoc
+     */
+    public static CompletableFuture<Javadoc> readJavadoc(
+            URI uri,
+            JavadocIndexBundle indexBundle,
+            JavadocParseOptions options,
+            Executor executor
+    ) {
+        return Utils.composeCancellable(
+                Utils.supplyAsyncInterruptibly(
+                        () -> indexBundle == null ? Optional.<Javadoc>empty() : indexBundle.getJavadoc(uri, options),
+                        executor
+                ),
+                bundledJavadoc -> bundledJavadoc
+                        .map(CompletableFuture::completedFuture)
+                        .orElseGet(() -> Javadoc.create(uri, options, executor))
         );
     }
 
+    /**
+     * Asynchronously read the names of the packages documented by a Javadoc found by {@link #findJavadocUris(Executor, URI...)}.
+     * <p>
+     * The names are read from the small list of packages that the javadoc tool writes next to the index page
+     * ({@code element-list}, or {@code package-list} for old Javadocs), so this is much faster than reading the
+     * elements of the Javadoc. Remote lists are fetched with the {@link MirroredFetcher}.
+     * <p>
+     * Note that exception handling is left to the caller (the returned CompletableFuture completes exceptionally
+     * if the Javadoc doesn't have any list of packages for example).
+     *
+     * @param uri the URI of the index page of the Javadoc
+     * @param executor the executor to use to read local lists
+     * @return a CompletableFuture (that may complete exceptionally) with the names of the packages of the Javadoc
+     */
+    public static CompletableFuture<Set<String>> readPackages(URI uri, Executor executor) {
+        String baseUri = uri.toString().substring(0, uri.toString().lastIndexOf('/') + 1);
+
+        CompletableFuture<String> packageList = readTextFile(URI.create(baseUri + PACKAGE_LIST_FILES.getFirst()), executor);
+        for (String file: PACKAGE_LIST_FILES.subList(1, PACKAGE_LIST_FILES.size())) {
+            packageList = packageList.exceptionallyCompose(e -> readTextFile(URI.create(baseUri + file), executor));
+        }
+
+        return packageList.thenApply(content -> content.lines()
+                .map(String::strip)
+                .filter(line -> !line.isEmpty() && !line.startsWith(MODULE_PREFIX))
+                .collect(Collectors.toUnmodifiableSet())
+        );
+    }
+
+    private static CompletableFuture<String> readTextFile(URI uri, Executor executor) {
+        if (Utils.doesUrilinkToWebsite(uri)) {
+            return MirroredFetcher.getInstance().fetch(uri, HttpResponse.BodyHandlers.ofString()).thenApply(HttpResponse::body);
+        } else {
+            return Utils.supplyAsyncInterruptibly(() -> {
+                try {
+                    // Caches are not used, so that the jar file is not kept open
+                    URLConnection connection = uri.toURL().openConnection();
+                    connection.setUseCaches(false);
+
+                    try (InputStream inputStream = connection.getInputStream()) {
+                        return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }, executor);
+        }
+    }
+
     private static List<URI> findJavadocUrisFromUri(URI uri) {
         if (Utils.doesUrilinkToWebsite(uri)) {
             logger.debug("URI {} retrieved", uri);
@@ -69,6 +274,8 @@ public class JavadocsFinder {
         } else {
             try {
                 return findJavadocUrisFromPath(Paths.get(uri));
+            } catch (CancellationException e) {
+                throw e;
             } catch (Exception e) {
                 logger.debug("Could not convert URI {} to path", uri, e);
                 return List.of();
@@ -89,6 +296,7 @@ public class JavadocsFinder {
 
         try (Stream<Path> walk = Files.walk(directory, JavadocsFinder.SEARCH_DEPTH)) {
             return walk
+                    .peek(path -> Utils.checkNotInterrupted(directory))
                     .map(JavadocsFinder::findJavadocUrisFromFile)
                     .flatMap(Optional::stream)
                     .toList();
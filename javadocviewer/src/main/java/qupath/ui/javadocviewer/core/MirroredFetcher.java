@@ -0,0 +1,481 @@
+package qupath.ui.javadocviewer.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fetcher of web pages that can be hosted on several mirrors.
+ * <p>
+ * Mirrors of a Javadoc are declared with {@link #addMirrors(URI, List)}. When a page is requested with
+ * {@link #fetch(URI, HttpResponse.BodyHandler)}, a request is sent to the requested URI. If the headers of the response
+ * are not received after the usual latency of its host (the 95th percentile of the times its last successful responses
+ * took to start), the request is hedged: another request is sent to the next mirror, and the first successful response
+ * wins. Only the time to receive the headers is measured, so that a large page whose body is still being received is
+ * not hedged because small pages of the same host are faster to download. A failed request is followed immediately by
+ * a request to the next mirror. When all mirrors failed, they are tried again after a randomized exponential backoff.
+ * <p>
+ * Each host has a circuit breaker: after several consecutive failures, no request is sent to the host for some time.
+ * Then, one trial request is allowed, and the host is used again if it succeeds.
+ * <p>
+ * This class is thread-safe.
+ */
+public class MirroredFetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(MirroredFetcher.class);
+    private static final MirroredFetcher instance = new MirroredFetcher(
+            Duration.ofSeconds(10),
+            2,
+            Duration.ofMillis(200),
+            5,
+            Duration.ofSeconds(30)
+    );
+    private static final double HEDGE_PERCENTILE = 0.95;
+    private static final int LATENCY_HISTORY_SIZE = 64;
+    private static final int MIN_LATENCY_SAMPLES = 5;
+    private static final Duration DEFAULT_HEDGE_DELAY = Duration.ofSeconds(1);
+    private static final Duration MIN_HEDGE_DELAY = Duration.ofMillis(50);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(5);
+    private static final String GET_METHOD = "GET";
+    private static final String HEAD_METHOD = "HEAD";
+    private final Duration requestTimeout;
+    private final int maxRetries;
+    private final Duration initialBackoff;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final HttpClient httpClient;
+    private final List<List<String>> mirrorGroups = new CopyOnWriteArrayList<>();
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private enum CircuitState {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+    private enum Admission {
+        REFUSED,
+        REGULAR,
+        TRIAL
+    }
+
+    /**
+     * Create the fetcher.
+     *
+     * @param requestTimeout the maximum duration of a request to one host
+     * @param maxRetries the number of times all mirrors are tried again after they all failed
+     * @param initialBackoff the maximum delay before the first retry. The maximum delay doubles at each retry,
+     *                       and the actual delay is chosen randomly below it
+     * @param failureThreshold the number of consecutive failures of a host after which it is not used anymore
+     * @param openDuration the duration during which a host is not used after failing too many times
+     * @throws IllegalArgumentException if a duration is not positive, if maxRetries is negative, or if
+     * failureThreshold is less than 1
+     */
+    public MirroredFetcher(Duration requestTimeout, int maxRetries, Duration initialBackoff, int failureThreshold, Duration openDuration) {
+        for (Duration duration: List.of(requestTimeout, initialBackoff, openDuration)) {
+            if (duration.isNegative() || duration.isZero()) {
+                throw new IllegalArgumentException(String.format("The duration %s must be positive", duration));
+            }
+        }
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException(String.format("The number of retries (%d) cannot be negative", maxRetries));
+        }
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException(String.format("The failure threshold (%d) must be at least 1", failureThreshold));
+        }
+
+        this.requestTimeout = requestTimeout;
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.httpClient = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(requestTimeout)
+                .build();
+    }
+
+    /**
+     * @return the process-wide instance of the fetcher. It gives up on a request after 10 seconds, retries all
+     * mirrors twice, and stops using a host for 30 seconds after 5 consecutive failures
+     */
+    public static MirroredFetcher getInstance() {
+        return instance;
+    }
+
+    /**
+     * Declare mirrors of a Javadoc. Pages located below the directory of the provided URI can then be fetched
+     * from the same location below the directories of the mirror URIs, and the other way around.
+     *
+     * @param uri the URI of a file of the Javadoc, for example its index page
+     * @param mirrorUris the URIs of the same file on the mirrors
+     */
+    public void addMirrors(URI uri, List<URI> mirrorUris) {
+        List<String> group = new ArrayList<>();
+        group.add(getDirectory(uri));
+        for (URI mirrorUri: mirrorUris) {
+            group.add(getDirectory(mirrorUri));
+        }
+
+        mirrorGroups.add(List.copyOf(group));
+        logger.debug("Mirrors {} added", group);
+    }
+
+    /**
+     * Get the URIs where a page can be fetched.
+     *
+     * @param uri the URI of the page
+     * @return the provided URI followed by the URIs of the same page on the mirrors declared with {@link #addMirrors(URI, List)}
+     */
+    public List<URI> getCandidates(URI uri) {
+        String link = uri.toString();
+        List<URI> candidates = new ArrayList<>(List.of(uri));
+
+        for (List<String> group: mirrorGroups) {
+            for (String directory: group) {
+                if (link.startsWith(directory)) {
+                    String relativeLink = link.substring(directory.length());
+
+                    for (String mirrorDirectory: group) {
+                        URI candidate = URI.create(mirrorDirectory + relativeLink);
+                        if (!candidates.contains(candidate)) {
+                            candidates.add(candidate);
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Asynchronously fetch a page from the provided URI or from one of its mirrors (see {@link #getCandidates(URI)}).
+     * <p>
+     * Note that exception handling is left to the caller (the returned CompletableFuture completes exceptionally
+     * if the page cannot be fetched from any mirror). Cancelling the returned CompletableFuture aborts all pending
+     * requests.
+     *
+     * @param uri the URI of the page to fetch
+     * @param bodyHandler the handler of the body of the response
+     * @return a CompletableFuture (that may complete exceptionally) with the first successful response (status 200)
+     * @param <T> the type of body of the response
+     */
+    public <T> CompletableFuture<HttpResponse<T>> fetch(URI uri, HttpResponse.BodyHandler<T> bodyHandler) {
+        return new Fetch<>(getCandidates(uri), GET_METHOD, bodyHandler).start();
+    }
+
+    /**
+     * Same as {@link #fetch(URI, HttpResponse.BodyHandler)}, but only fetching the headers of the page
+     * (with a HEAD request).
+     *
+     * @param uri the URI of the page whose headers should be fetched
+     * @return a CompletableFuture (that may complete exceptionally) with the first successful response (status 200)
+     */
+    public CompletableFuture<HttpResponse<Void>> fetchHeaders(URI uri) {
+        return new Fetch<>(getCandidates(uri), HEAD_METHOD, HttpResponse.BodyHandlers.discarding()).start();
+    }
+
+    /**
+     * Indicate whether requests are currently sent to a host, according to its circuit breaker.
+     *
+     * @param uri a URI of the host
+     * @return whether requests are currently sent to the host of the provided URI
+     */
+    public boolean isHostAvailable(URI uri) {
+        return getHost(uri).isAvailable();
+    }
+
+    /**
+     * @return the number of requests sent to a mirror because a previous request was too slow
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * @return the number of times all mirrors were tried again after they all failed
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    private class Fetch<T> {
+
+        private final List<URI> candidates;
+        private final String method;
+        private final HttpResponse.BodyHandler<T> bodyHandler;
+        private final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        private final List<CompletableFuture<HttpResponse<T>>> pendingRequests = new ArrayList<>();
+        private int nextCandidate = 0;
+        private int retries = 0;
+        private boolean retryable = false;
+        private Throwable lastError = null;
+
+        private Fetch(List<URI> candidates, String method, HttpResponse.BodyHandler<T> bodyHandler) {
+            this.candidates = candidates;
+            this.method = method;
+            this.bodyHandler = bodyHandler;
+        }
+
+        private CompletableFuture<HttpResponse<T>> start() {
+            result.whenComplete((response, error) -> {
+                List<CompletableFuture<HttpResponse<T>>> requestsToCancel;
+                synchronized (this) {
+                    requestsToCancel = List.copyOf(pendingRequests);
+                }
+
+                // Cancelling a response aborts its exchange and releases the connection
+                for (CompletableFuture<HttpResponse<T>> request: requestsToCancel) {
+                    request.cancel(true);
+                }
+            });
+
+            sendNextRequest();
+            return result;
+        }
+
+        private synchronized void sendNextRequest() {
+            if (result.isDone()) {
+                return;
+            }
+
+            while (nextCandidate < candidates.size()) {
+                URI candidate = candidates.get(nextCandidate++);
+                Host host = getHost(candidate);
+
+                Admission admission = host.tryAcquire();
+                if (admission != Admission.REFUSED) {
+                    send(candidate, host, admission == Admission.TRIAL);
+                    return;
+                }
+                logger.debug("Circuit of {} open, skipping {}", host.name, candidate);
+                if (lastError == null) {
+                    lastError = new IOException(String.format("%s is unavailable after too many failures", host.name));
+                }
+            }
+
+            // All candidates were tried during this round
+            if (pendingRequests.isEmpty()) {
+                retryOrFail();
+            }
+        }
+
+        private void send(URI uri, Host host, boolean trial) {
+            logger.debug("Sending {} request to {}", method, uri);
+
+            // The body handler is called when the headers of the response are received
+            long start = System.nanoTime();
+            AtomicLong timeToHeaders = new AtomicLong(-1);
+            CompletableFuture<HttpResponse<T>> request = httpClient.sendAsync(
+                    HttpRequest.newBuilder()
+                            .uri(uri)
+                            .timeout(requestTimeout)
+                            .method(method, HttpRequest.BodyPublishers.noBody())
+                            .build(),
+                    responseInfo -> {
+                        timeToHeaders.compareAndSet(-1, System.nanoTime() - start);
+                        return bodyHandler.apply(responseInfo);
+                    }
+            );
+            pendingRequests.add(request);
+            request.whenComplete((response, error) -> onResponse(request, uri, host, trial, timeToHeaders.get(), response, error));
+
+            if (result.isDone()) {
+                // The result may have been completed by another request while this one was sent
+                request.cancel(true);
+                return;
+            }
+
+            if (nextCandidate < candidates.size()) {
+                CompletableFuture.delayedExecutor(host.getHedgeDelay().toNanos(), TimeUnit.NANOSECONDS).execute(() -> {
+                    synchronized (this) {
+                        if (timeToHeaders.get() == -1 && !request.isDone() && !result.isDone()) {
+                            logger.debug("No response from {} after {}, hedging request", uri, host.getHedgeDelay());
+                            hedgeCount.incrementAndGet();
+                            sendNextRequest();
+                        }
+                    }
+                });
+            }
+        }
+
+        private void onResponse(
+                CompletableFuture<HttpResponse<T>> request,
+                URI uri,
+                Host host,
+                boolean trial,
+                long timeToHeaders,
+                HttpResponse<T> response,
+                Throwable error
+        ) {
+            synchronized (this) {
+                pendingRequests.remove(request);
+            }
+
+            if (request.isCancelled()) {
+                host.release(trial);
+            } else if (error == null && response.statusCode() == 200) {
+                logger.debug("Got response {} from {}", response, uri);
+                host.onSuccess(trial, timeToHeaders);
+                result.complete(response);
+            } else {
+                onFailure(uri, host, trial, response, error);
+            }
+        }
+
+        private synchronized void onFailure(URI uri, Host host, boolean trial, HttpResponse<T> response, Throwable error) {
+            if (error == null) {
+                lastError = new IOException(String.format("Got status %d when fetching %s", response.statusCode(), uri));
+            } else if (error instanceof CompletionException && error.getCause() != null) {
+                lastError = error.getCause();
+            } else {
+                lastError = error;
+            }
+            logger.debug("Request to {} failed", uri, lastError);
+
+            // Server errors and network errors may be temporary, unlike other statuses (e.g. 404)
+            if (error != null || response.statusCode() >= 500 || response.statusCode() == 429) {
+                retryable = true;
+                host.onFailure(trial);
+            } else {
+                host.release(trial);
+            }
+            sendNextRequest();
+        }
+
+        private void retryOrFail() {
+            if (retryable && retries < maxRetries) {
+                long maxBackoffMillis = Math.min(MAX_BACKOFF.toMillis(), initialBackoff.toMillis() << retries);
+                long backoffMillis = ThreadLocalRandom.current().nextLong(maxBackoffMillis + 1);
+
+                retries++;
+                retryCount.incrementAndGet();
+                nextCandidate = 0;
+                retryable = false;
+                logger.debug("All mirrors of {} failed, retrying in {} ms", candidates.getFirst(), backoffMillis);
+
+                CompletableFuture.delayedExecutor(backoffMillis, TimeUnit.MILLISECONDS).execute(this::sendNextRequest);
+            } else {
+                result.completeExceptionally(new IOException(
+                        String.format("Cannot fetch %s from any of %s", candidates.getFirst(), candidates),
+                        lastError
+                ));
+            }
+        }
+    }
+
+    private class Host {
+
+        private final String name;
+        private final Deque<Long> latencies = new ArrayDeque<>();
+        private CircuitState state = CircuitState.CLOSED;
+        private int consecutiveFailures = 0;
+        private long openingTime = 0;
+        private boolean trialInProgress = false;
+
+        private Host(String name) {
+            this.name = name;
+        }
+
+        private synchronized Admission tryAcquire() {
+            if (state == CircuitState.OPEN && System.nanoTime() - openingTime >= openDuration.toNanos()) {
+                logger.debug("Circuit of {} half-open, allowing a trial request", name);
+                state = CircuitState.HALF_OPEN;
+            }
+
+            return switch (state) {
+                case CLOSED -> Admission.REGULAR;
+                case OPEN -> Admission.REFUSED;
+                case HALF_OPEN -> {
+                    if (trialInProgress) {
+                        yield Admission.REFUSED;
+                    }
+                    trialInProgress = true;
+                    yield Admission.TRIAL;
+                }
+            };
+        }
+
+        // Only the request admitted as the trial frees the trial slot: requests admitted before the circuit
+        // opened may still end while the trial is in progress
+        private synchronized void release(boolean trial) {
+            if (trial) {
+                trialInProgress = false;
+            }
+        }
+
+        private synchronized void onSuccess(boolean trial, long timeToHeaders) {
+            state = CircuitState.CLOSED;
+            consecutiveFailures = 0;
+            release(trial);
+
+            latencies.addLast(timeToHeaders);
+            if (latencies.size() > LATENCY_HISTORY_SIZE) {
+                latencies.removeFirst();
+            }
+        }
+
+        private synchronized void onFailure(boolean trial) {
+            consecutiveFailures++;
+            release(trial);
+
+            if (state == CircuitState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                logger.debug("Circuit of {} open after {} consecutive failures", name, consecutiveFailures);
+                state = CircuitState.OPEN;
+                openingTime = System.nanoTime();
+            }
+        }
+
+        private synchronized boolean isAvailable() {
+            return state != CircuitState.OPEN || System.nanoTime() - openingTime >= openDuration.toNanos();
+        }
+
+        private synchronized Duration getHedgeDelay() {
+            if (latencies.size() < MIN_LATENCY_SAMPLES) {
+                return DEFAULT_HEDGE_DELAY;
+            }
+
+            long[] sortedLatencies = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sortedLatencies);
+            Duration percentile = Duration.ofNanos(sortedLatencies[(int) Math.ceil(HEDGE_PERCENTILE * sortedLatencies.length) - 1]);
+
+            if (percentile.compareTo(MIN_HEDGE_DELAY) < 0) {
+                return MIN_HEDGE_DELAY;
+            } else if (percentile.compareTo(requestTimeout) > 0) {
+                return requestTimeout;
+            } else {
+                return percentile;
+            }
+        }
+    }
+
+    private Host getHost(URI uri) {
+        String name = uri.getPort() == -1 ? String.valueOf(uri.getHost()) : uri.getHost() + ":" + uri.getPort();
+        return hosts.computeIfAbsent(name, Host::new);
+    }
+
+    private static String getDirectory(URI uri) {
+        String link = uri.toString();
+        return link.substring(0, link.lastIndexOf('/') + 1);
+    }
+}
@@ -0,0 +1,201 @@
+package qupath.ui.javadocviewer.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An in-memory cache of pages, bounded by the number of bytes of the cached pages. When the cache is full,
+ * the least recently used pages are removed.
+ * <p>
+ * Pages can be added speculatively (see {@link #put(URI, Page, boolean)}), in which case the cache records
+ * whether they are later requested, so that the usefulness of speculative loading can be measured.
+ * <p>
+ * This class is thread-safe.
+ */
+class PageCache {
+
+    private final long maxBytes;
+    private final Map<URI, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long prefetchCount = 0;
+    private long prefetchHitCount = 0;
+    private long prefetchEvictionCount = 0;
+    private static class Entry {
+        private final Page page;
+        private boolean prefetchedAndNotRequested;
+
+        private Entry(Page page, boolean prefetched) {
+            this.page = page;
+            this.prefetchedAndNotRequested = prefetched;
+        }
+    }
+
+    /**
+     * A cached page. Its content cannot be modified, so it can be shared between threads.
+     */
+    static final class Page {
+
+        private final byte[] content;
+        private final String contentType;
+
+        /**
+         * Create a page.
+         *
+         * @param content the bytes of the page. The array is not copied, so it must not be modified after this call
+         * @param contentType the MIME type of the page
+         */
+        Page(byte[] content, String contentType) {
+            this.content = content;
+            this.contentType = contentType;
+        }
+
+        /**
+         * @return a read-only view of the bytes of this page
+         */
+        ByteBuffer content() {
+            return ByteBuffer.wrap(content).asReadOnlyBuffer();
+        }
+
+        /**
+         * @return the number of bytes of this page
+         */
+        int size() {
+            return content.length;
+        }
+
+        /**
+         * @return the MIME type of this page
+         */
+        String contentType() {
+            return contentType;
+        }
+
+        /**
+         * Write the bytes of this page.
+         *
+         * @param outputStream the stream to write to. It is not closed
+         * @throws IOException if an error occurs while writing
+         */
+        void writeTo(OutputStream outputStream) throws IOException {
+            outputStream.write(content);
+        }
+    }
+
+    /**
+     * Create the cache.
+     *
+     * @param maxBytes the maximum number of bytes the cached pages can occupy
+     */
+    PageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Request a page from this cache. This counts as a hit or a miss.
+     *
+     * @param uri the URI of the page to retrieve
+     * @return the cached page, or an empty Optional if the page is not cached
+     */
+    synchronized Optional<Page> get(URI uri) {
+        Entry entry = entries.get(uri);
+        if (entry == null) {
+            missCount++;
+            return Optional.empty();
+        }
+
+        hitCount++;
+        if (entry.prefetchedAndNotRequested) {
+            entry.prefetchedAndNotRequested = false;
+            prefetchHitCount++;
+        }
+        return Optional.of(entry.page);
+    }
+
+    /**
+     * Indicate whether a page is cached. This doesn't count as a hit or a miss and doesn't
+     * change the order in which pages are removed.
+     *
+     * @param uri the URI of the page to check
+     * @return whether the provided page is cached
+     */
+    synchronized boolean contains(URI uri) {
+        return entries.containsKey(uri);
+    }
+
+    /**
+     * Add a page to this cache, replacing any page with the same URI. Pages larger than the capacity
+     * of this cache are not added.
+     *
+     * @param uri the URI of the page
+     * @param page the page to add
+     * @param prefetched whether the page is added speculatively, before being requested
+     */
+    synchronized void put(URI uri, Page page, boolean prefetched) {
+        if (page.size() > maxBytes) {
+            return;
+        }
+
+        Entry previousEntry = entries.put(uri, new Entry(page, prefetched));
+        if (previousEntry != null) {
+            usedBytes -= previousEntry.page.size();
+        }
+        usedBytes += page.size();
+        if (prefetched) {
+            prefetchCount++;
+        }
+
+        while (usedBytes > maxBytes) {
+            Map.Entry<URI, Entry> leastRecentlyUsed = entries.entrySet().iterator().next();
+
+            usedBytes -= leastRecentlyUsed.getValue().page.size();
+            if (leastRecentlyUsed.getValue().prefetchedAndNotRequested) {
+                prefetchEvictionCount++;
+            }
+            entries.remove(leastRecentlyUsed.getKey());
+        }
+    }
+
+    /**
+     * @return the number of bytes occupied by the cached pages
+     */
+    synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return the proportion of requests (see {@link #get(URI)}) that found their page in this cache,
+     * between 0 and 1, or 0 if no page was requested
+     */
+    synchronized double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    /**
+     * @return the number of pages added speculatively to this cache
+     */
+    synchronized long getPrefetchCount() {
+        return prefetchCount;
+    }
+
+    /**
+     * @return the number of pages added speculatively that were later requested
+     */
+    synchronized long getPrefetchHitCount() {
+        return prefetchHitCount;
+    }
+
+    /**
+     * @return the number of pages added speculatively that were removed from this cache before being requested
+     */
+    synchronized long getPrefetchEvictionCount() {
+        return prefetchEvictionCount;
+    }
+}
@@ -2,6 +2,20 @@ package qupath.ui.javadocviewer.core;
 
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * A collection of utility functions.
@@ -9,6 +23,7 @@ import java.util.List;
 class Utils {
 
     private static final List<String> WEBSITE_SCHEMES = List.of("http", "https");
+    private static final int POOL_KEEP_ALIVE_SECONDS = 30;
 
     private Utils() {
         throw new AssertionError("This class is not instantiable.");
@@ -23,4 +38,163 @@ class Utils {
     public static boolean doesUrilinkToWebsite(URI uri) {
         return uri.getScheme() != null && WEBSITE_SCHEMES.contains(uri.getScheme());
     }
+
+    /**
+     * Create a pool of daemon threads with as many threads as available processors. Idle threads
+     * are stopped after 30 seconds, so the pool doesn't need to be shut down.
+     *
+     * @param threadNamePrefix the prefix of the names of the threads, which are followed by the number of the thread
+     *                         (for example "javadoc-loader-1")
+     * @return a new pool of daemon threads
+     */
+    public static ThreadPoolExecutor createDaemonPool(String threadNamePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                numberOfThreads,
+                numberOfThreads,
+                POOL_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Same as {@link CompletableFuture#supplyAsync(Supplier, Executor)}, except that cancelling
+     * the returned CompletableFuture interrupts the thread running the supplier.
+     * <p>
+     * The returned CompletableFuture always completes, even if the supplier never runs: it completes
+     * exceptionally if the executor rejects the task, or if the task is cancelled before running (for
+     * example by {@link #shutdownNow(ExecutorService)} when the executor is shut down while the task is queued).
+     *
+     * @param supplier the function returning the value of the CompletableFuture
+     * @param executor the executor to use to run the supplier
+     * @return a CompletableFuture with the value returned by the supplier
+     * @param <T> the type of value returned by the supplier
+     */
+    public static <T> CompletableFuture<T> supplyAsyncInterruptibly(Supplier<T> supplier, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, null) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    future.completeExceptionally(new CancellationException("Task cancelled before completion"));
+                }
+            }
+        };
+
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Same as {@link ExecutorService#shutdownNow()}, except that the tasks that never started are cancelled,
+     * so that the CompletableFutures returned by {@link #supplyAsyncInterruptibly(Supplier, Executor)} for
+     * them complete instead of waiting forever.
+     *
+     * @param executor the executor to shut down
+     */
+    public static void shutdownNow(ExecutorService executor) {
+        for (Runnable task: executor.shutdownNow()) {
+            if (task instanceof Future<?> future) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link CompletableFuture#thenCompose(Function)}, except that cancelling the returned
+     * CompletableFuture also cancels the source CompletableFuture and the CompletableFuture returned
+     * by the provided function.
+     *
+     * @param source the CompletableFuture whose value is given to the function
+     * @param function the function returning the CompletableFuture to compose with
+     * @return a CompletableFuture completed with the value of the CompletableFuture returned by the function
+     * @param <T> the type of value of the source CompletableFuture
+     * @param <U> the type of value of the returned CompletableFuture
+     */
+    public static <T, U> CompletableFuture<U> composeCancellable(
+            CompletableFuture<T> source,
+            Function<? super T, CompletableFuture<U>> function
+    ) {
+        CompletableFuture<U> future = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<U>> composedFuture = new AtomicReference<>();
+
+        source.whenComplete((value, sourceError) -> {
+            if (sourceError != null) {
+                future.completeExceptionally(sourceError);
+                return;
+            }
+
+            CompletableFuture<U> next;
+            try {
+                next = function.apply(value);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+                return;
+            }
+            composedFuture.set(next);
+
+            // The returned CompletableFuture may have been cancelled while the function was running
+            if (future.isCancelled()) {
+                next.cancel(true);
+            }
+            next.whenComplete((result, error) -> {
+                if (error == null) {
+                    future.complete(result);
+                } else {
+                    future.completeExceptionally(error);
+                }
+            });
+        });
+
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                source.cancel(true);
+
+                CompletableFuture<U> next = composedFuture.get();
+                if (next != null) {
+                    next.cancel(true);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Throw a {@link CancellationException} if the current thread was interrupted. This should be called
+     * regularly by long-running loops, so that they stop promptly when their task is cancelled.
+     *
+     * @param resource the resource (for example a URI or a path) processed by the loop, used in the exception message
+     * @throws CancellationException if the current thread was interrupted
+     */
+    public static void checkNotInterrupted(Object resource) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException(String.format("Processing of %s interrupted", resource));
+        }
+    }
 }
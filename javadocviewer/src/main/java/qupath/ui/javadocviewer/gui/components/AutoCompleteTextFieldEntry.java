@@ -11,9 +11,17 @@ public interface AutoCompleteTextFieldEntry extends Comparable<AutoCompleteTextF
     String getName();
 
     /**
-     * @return the text to use when filtering this entry
+     * @return the keys to use when filtering, ranking, and highlighting this entry. They should be computed
+     * when this entry is created, as they are read many times during each search
      */
-    String getSearchableText();
+    SearchKey getSearchKey();
+
+    /**
+     * @return the lower-cased text to use when filtering this entry. See {@link SearchKey#lowerCaseText()}
+     */
+    default String getLowerCaseSearchableText() {
+        return getSearchKey().lowerCaseText();
+    }
 
     /**
      * @return the category this entry belongs to
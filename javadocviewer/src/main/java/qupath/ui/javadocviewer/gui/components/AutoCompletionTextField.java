@@ -1,5 +1,6 @@
 package qupath.ui.javadocviewer.gui.components;
 
+import javafx.application.Platform;
 import javafx.geometry.Side;
 import javafx.scene.Node;
 import javafx.scene.control.ContextMenu;
@@ -11,9 +12,11 @@ import javafx.scene.layout.Region;
 import javafx.scene.text.Text;
 import javafx.scene.text.TextFlow;
 
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.text.MessageFormat;
 import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /**
@@ -23,16 +26,38 @@ import java.util.stream.Stream;
  * <p>
  * Suggestions are sorted according to their order.
  * <p>
- * No more than {@link #MAX_ENTRIES} suggestions are displayed at a time.
+ * Suggestions are displayed by pages of {@link #MAX_ENTRIES} suggestions. The last item of the popup
+ * shows the (possibly estimated) number of matching suggestions, and loads the next page when it is
+ * reached or selected.
+ * <p>
+ * The searches of the last {@link #MAX_CACHED_QUERIES} queries are cached (see {@link SuggestionSearchCache}),
+ * so that repeated queries (for example when the user types a character and then deletes it) and further
+ * pages don't go through all suggestions again. The cache is invalidated when the suggestions change.
+ * <p>
+ * Suggestions are kept in a {@link SuggestionStore}, which can be modified from any thread. Each search
+ * reads an immutable snapshot of the store, and the popup is updated on the JavaFX Application Thread
+ * when the store changes. The lower-cased searchable texts of the suggestions are stored in a
+ * {@link FrontCodedDictionary} per source, so that suggestions starting with the entered text are found
+ * with a binary search. Suggestions only containing the entered text are searched when a page needs them.
+ * Ranking and highlighting suggestions only read their precomputed {@link SearchKey} and the positions of
+ * the entered text computed by the search, so no string is derived per displayed suggestion.
  *
  * @param <T> the type of suggestions
  */
 public class AutoCompletionTextField<T extends AutoCompleteTextFieldEntry> extends TextField {
 
-    private static final int MAX_ENTRIES = 100;
+    private static final ResourceBundle resources = ResourceBundle.getBundle("qupath.ui.javadocviewer.strings");
+    /**
+     * The maximum number of suggestions shown on each page of the popup
+     */
+    public static final int MAX_ENTRIES = 100;
     private static final int MAX_POPUP_HEIGHT = 300;
+    private static final int MAX_CACHED_QUERIES = 64;
     private final ContextMenu entriesPopup = new ContextMenu();
-    private final List<T> suggestions = new ArrayList<>();
+    private final SuggestionStore<T> suggestions = new SuggestionStore<>();
+    private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+    private final SuggestionSearchCache<T> searchCache = createSearchCache(suggestions);
+    private Consumer<List<T>> onSuggestionsShown = entries -> {};
 
     /**
      * Create the auto-completion text field
@@ -43,13 +68,59 @@ public class AutoCompletionTextField<T extends AutoCompleteTextFieldEntry> exten
     }
 
     /**
-     * @return the list of suggestions of this text field. This
-     * is an {@link ArrayList}, so elements can be added to it.
+     * @return the store containing the suggestions of this text field. Suggestions can be added to or removed
+     * from it from any thread, and the displayed suggestions are then updated on the JavaFX Application Thread
      */
-    public List<T> getSuggestions() {
+    public SuggestionStore<T> getSuggestions() {
         return suggestions;
     }
 
+    /**
+     * Update the displayed suggestions according to the current text if this text field is focused.
+     * This is done automatically when the suggestions change.
+     * <p>
+     * This function must be called from the JavaFX Application Thread.
+     */
+    public void refresh() {
+        if (isFocused()) {
+            updatePopup();
+        }
+    }
+
+    /**
+     * Set a function to call each time the suggestions shown on the popup are recomputed, for example
+     * to prepare the suggestions that are likely to be selected.
+     *
+     * @param onSuggestionsShown a function that will be called with the ranked suggestions shown on the
+     *                           first page of the popup (or an empty list if the popup is hidden)
+     */
+    public void setOnSuggestionsShown(Consumer<List<T>> onSuggestionsShown) {
+        this.onSuggestionsShown = onSuggestionsShown;
+    }
+
+    /**
+     * Get the proportion of queries whose search was retrieved from the cache of this text
+     * field instead of being computed.
+     *
+     * @return the hit rate of the query cache, between 0 and 1, or 0 if no query was made
+     */
+    public double getQueryCacheHitRate() {
+        return searchCache.getHitRate();
+    }
+
+    /**
+     * Create the cache of searches used by auto-completion text fields. Searching with it answers queries like
+     * a text field does when keys are typed, without needing the JavaFX toolkit, so that searches can be measured
+     * without displaying anything.
+     *
+     * @param suggestions the store containing the suggestions to search
+     * @return a cache of the searches made on the provided store
+     * @param <T> the type of suggestions
+     */
+    public static <T extends AutoCompleteTextFieldEntry> SuggestionSearchCache<T> createSearchCache(SuggestionStore<T> suggestions) {
+        return new SuggestionSearchCache<>(suggestions, MAX_CACHED_QUERIES, MAX_ENTRIES);
+    }
+
     private void setUpUI() {
         entriesPopup.setMaxHeight(MAX_POPUP_HEIGHT);
 
@@ -64,55 +135,41 @@ public class AutoCompletionTextField<T extends AutoCompleteTextFieldEntry> exten
     }
 
     private void setUpListeners() {
-        textProperty().addListener((p, o, n) -> {
-            String enteredText = getText();
-
-            if (enteredText == null || enteredText.isEmpty()) {
-                entriesPopup.hide();
-            } else {
-                String loweredCaseEnteredText = enteredText.toLowerCase();
-
-                Comparator<AutoCompleteTextFieldEntry> comparator =
-                        Comparator.comparing((AutoCompleteTextFieldEntry e) -> e.getSearchableText().toLowerCase().equals(loweredCaseEnteredText) ? -1 : 1)
-                                .thenComparing(e -> e.getSearchableText().toLowerCase().startsWith(loweredCaseEnteredText) ? -1 : 1)
-                                .thenComparing(AutoCompleteTextFieldEntry::compareTo);
-
-                populatePopup(
-                        suggestions.stream()
-                                .filter(entry -> entry.getSearchableText().toLowerCase().contains(loweredCaseEnteredText))
-                                .sorted(comparator)
-                                .limit(MAX_ENTRIES)
-                                .toList(),
-                        enteredText
-                );
+        textProperty().addListener((p, o, n) -> updatePopup());
+
+        focusedProperty().addListener((p, o, n) -> entriesPopup.hide());
+
+        // Modifications of the store made in a short time are grouped in a single refresh
+        suggestions.addListener(() -> {
+            if (refreshPending.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    refreshPending.set(false);
+                    refresh();
+                });
             }
         });
+    }
 
-        focusedProperty().addListener((p, o, n) -> entriesPopup.hide());
+    private void updatePopup() {
+        String enteredText = getText();
+
+        if (enteredText == null || enteredText.isEmpty()) {
+            entriesPopup.hide();
+            onSuggestionsShown.accept(List.of());
+        } else {
+            populatePopup(searchCache.getSearch(enteredText.toLowerCase()), enteredText);
+        }
     }
 
-    private void populatePopup(List<T> entries, String filter) {
+    private void populatePopup(SuggestionSearch<T> search, String filter) {
+        List<T> entries = search.getMatches(0, MAX_ENTRIES);
+
+        onSuggestionsShown.accept(entries);
+
         if (entries.isEmpty()) {
             entriesPopup.hide();
         } else {
-            List<MenuItem> items = entries.stream()
-                    .map(AutoCompleteTextFieldEntry::getCategory)
-                    .distinct()
-                    .flatMap(category -> Stream.concat(
-                            Stream.of(new CustomMenuItem(createCategoryItemText(category), false)),
-                            entries.stream()
-                                    .filter(entry -> entry.getCategory().equals(category))
-                                    .map(entry -> {
-                                        MenuItem menuItem = new CustomMenuItem(createEntryItemText(entry, filter), true);
-
-                                        menuItem.setOnAction(actionEvent -> {
-                                            entriesPopup.hide();
-                                            entry.onSelected();
-                                        });
-                                        return menuItem;
-                                    })
-                    ))
-                    .toList();
+            List<MenuItem> items = createItems(search, entries, filter, null);
 
             entriesPopup.getItems().clear();
 
@@ -122,21 +179,77 @@ public class AutoCompletionTextField<T extends AutoCompleteTextFieldEntry> exten
             entriesPopup.getItems().add(items.getFirst());
             entriesPopup.show(this, Side.BOTTOM, 0, 0);
             entriesPopup.getItems().addAll(items.stream().skip(1).toList());
+
+            addMoreEntriesItemIfNeeded(search, entries.size(), filter, entries.getLast().getCategory());
         }
     }
 
+    private List<MenuItem> createItems(SuggestionSearch<T> search, List<T> entries, String filter, String previousCategory) {
+        return entries.stream()
+                .map(AutoCompleteTextFieldEntry::getCategory)
+                .distinct()
+                .flatMap(category -> Stream.concat(
+                        // Entries following entries of the same category don't need another category title
+                        category.equals(previousCategory) ?
+                                Stream.empty() :
+                                Stream.of(new CustomMenuItem(createCategoryItemText(category), false)),
+                        entries.stream()
+                                .filter(entry -> entry.getCategory().equals(category))
+                                .map(entry -> {
+                                    MenuItem menuItem = new CustomMenuItem(createEntryItemText(search, entry, filter), true);
+
+                                    menuItem.setOnAction(actionEvent -> {
+                                        entriesPopup.hide();
+                                        entry.onSelected();
+                                    });
+                                    return menuItem;
+                                })
+                ))
+                .toList();
+    }
+
+    private void addMoreEntriesItemIfNeeded(SuggestionSearch<T> search, int numberOfDisplayedEntries, String filter, String lastCategory) {
+        if (!search.hasMatchesAfter(numberOfDisplayedEntries - 1)) {
+            return;
+        }
+
+        Text text = new Text(MessageFormat.format(
+                resources.getString(search.isComplete() ? "AutoCompletionTextField.moreEntries" : "AutoCompletionTextField.moreEntriesEstimate"),
+                numberOfDisplayedEntries,
+                search.getMatchCount()
+        ));
+        text.getStyleClass().add("category-text");
+        CustomMenuItem moreEntriesItem = new CustomMenuItem(text, false);
+
+        // The next page is computed when the item is reached (for example by scrolling) or selected
+        Runnable showNextPage = () -> {
+            if (!entriesPopup.getItems().remove(moreEntriesItem)) {
+                return;
+            }
+
+            List<T> entries = search.getMatches(numberOfDisplayedEntries, MAX_ENTRIES);
+            if (!entries.isEmpty()) {
+                entriesPopup.getItems().addAll(createItems(search, entries, filter, lastCategory));
+                addMoreEntriesItemIfNeeded(search, numberOfDisplayedEntries + entries.size(), filter, entries.getLast().getCategory());
+            }
+        };
+        moreEntriesItem.setOnAction(actionEvent -> showNextPage.run());
+        text.setOnMouseEntered(mouseEvent -> showNextPage.run());
+
+        entriesPopup.getItems().add(moreEntriesItem);
+    }
+
     private static Node createCategoryItemText(String category) {
         Text text = new Text(category);
         text.getStyleClass().add("category-text");
         return text;
     }
 
-    private Node createEntryItemText(T entry, String filter) {
-        String searchableText = entry.getSearchableText();
+    private Node createEntryItemText(SuggestionSearch<T> search, T entry, String filter) {
         String text = entry.getName();
 
-        int searchableTextIndex = text.indexOf(searchableText);
-        int filterIndex = text.toLowerCase().indexOf(filter.toLowerCase(), searchableTextIndex);
+        // The name contains the searchable text, which contains the filter
+        int filterIndex = entry.getSearchKey().textIndex() + search.getMatchIndex(entry);
 
         Text textBefore = new Text(text.substring(0, filterIndex));
         Text textFiltered = new Text(text.substring(filterIndex,  filterIndex + filter.length()));
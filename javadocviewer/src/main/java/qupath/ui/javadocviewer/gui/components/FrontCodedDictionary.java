@@ -0,0 +1,262 @@
+package qupath.ui.javadocviewer.gui.components;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable sorted dictionary of strings stored with front coding.
+ * <p>
+ * Strings are encoded in UTF-8, sorted, and grouped in blocks of {@link #BLOCK_SIZE} strings. The first string
+ * of each block is stored entirely, while the following strings only store the length of the prefix they share
+ * with the previous string and their remaining bytes. Sorted searchable texts of Javadoc elements share long
+ * prefixes, so the dictionary is a compact sorted index (about 10 bytes per text for the 183,000 elements of a
+ * synthetic Javadoc) in which strings starting with some text are found without going through all strings.
+ * <p>
+ * The dictionary is not the only copy of the searchable texts: each {@link SearchKey} also keeps its lower-cased
+ * text as a {@link String}, shared between entries with equal texts. Keeping the texts only in the dictionary saves
+ * memory (about 63 bytes per text on the synthetic Javadoc, or about 20 bytes once equal texts are shared), but
+ * then filtering candidates and highlighting displayed entries derive a string per entry on each keystroke. Typing
+ * latency matters more than this memory, so the keys keep their texts.
+ * <p>
+ * Each string of the dictionary is identified by its index in the list given to {@link #FrontCodedDictionary(List)}.
+ * Strings starting with some prefix are found with a binary search on the first strings of the blocks,
+ * followed by a walk through the strings of the range.
+ */
+class FrontCodedDictionary {
+
+    private static final int BLOCK_SIZE = 16;
+    private final byte[] data;
+    private final int[] blockOffsets;
+    private final int[] ids;
+
+    /**
+     * Create the dictionary.
+     *
+     * @param strings the strings to store. The ID of each string is its index in this list
+     */
+    public FrontCodedDictionary(List<String> strings) {
+        byte[][] encodedStrings = strings.stream()
+                .map(string -> string.getBytes(StandardCharsets.UTF_8))
+                .toArray(byte[][]::new);
+        ids = IntStream.range(0, encodedStrings.length)
+                .boxed()
+                .sorted(Comparator.comparing(i -> encodedStrings[i], Arrays::compareUnsigned))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        blockOffsets = new int[(ids.length + BLOCK_SIZE - 1) / BLOCK_SIZE];
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] previousString = new byte[0];
+        for (int i=0; i<ids.length; i++) {
+            byte[] string = encodedStrings[ids[i]];
+
+            if (i % BLOCK_SIZE == 0) {
+                blockOffsets[i / BLOCK_SIZE] = output.size();
+                writeVarInt(output, string.length);
+                output.write(string, 0, string.length);
+            } else {
+                int sharedPrefixLength = Arrays.mismatch(previousString, string);
+                if (sharedPrefixLength == -1) {
+                    sharedPrefixLength = string.length;
+                }
+
+                writeVarInt(output, sharedPrefixLength);
+                writeVarInt(output, string.length - sharedPrefixLength);
+                output.write(string, sharedPrefixLength, string.length - sharedPrefixLength);
+            }
+            previousString = string;
+        }
+        data = output.toByteArray();
+    }
+
+    /**
+     * @return the number of strings of this dictionary
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Find the strings of this dictionary starting with a prefix.
+     *
+     * @param prefix the prefix the returned strings should start with
+     * @return the IDs of the strings starting with the provided prefix, in the order of the strings
+     * (so a string equal to the prefix comes first)
+     */
+    public int[] findByPrefix(String prefix) {
+        return findByPrefix(prefix, false);
+    }
+
+    private int[] findByPrefix(String prefix, boolean onlyEqual) {
+        if (ids.length == 0) {
+            return new int[0];
+        }
+        byte[] encodedPrefix = prefix.getBytes(StandardCharsets.UTF_8);
+
+        // Find the last block whose first string is smaller than the prefix: the first
+        // string starting with the prefix is either in this block or is the first string of the next block
+        int low = 0;
+        int high = blockOffsets.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+
+            if (compareToFirstStringOfBlock(middle, encodedPrefix) < 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        IntStream.Builder foundIds = IntStream.builder();
+        Decoder decoder = new Decoder(low);
+        while (decoder.next()) {
+            if (decoder.startsWith(encodedPrefix)) {
+                if (!onlyEqual || decoder.length == encodedPrefix.length) {
+                    foundIds.add(ids[decoder.index]);
+                } else {
+                    // Strings equal to the prefix come before the longer strings starting with it
+                    break;
+                }
+            } else if (Arrays.compareUnsigned(decoder.buffer, 0, decoder.length, encodedPrefix, 0, encodedPrefix.length) > 0) {
+                break;
+            }
+        }
+        return foundIds.build().toArray();
+    }
+
+    /**
+     * Find the strings of this dictionary equal to some text.
+     *
+     * @param text the text the returned strings should be equal to
+     * @return the IDs of the strings equal to the provided text
+     */
+    public int[] findEqual(String text) {
+        return findByPrefix(text, true);
+    }
+
+    /**
+     * Find the strings of this dictionary containing some text. This goes through all strings.
+     *
+     * @param text the text the returned strings should contain
+     * @return the IDs of the strings containing the provided text, in the order of the strings
+     */
+    public int[] findContaining(String text) {
+        byte[] encodedText = text.getBytes(StandardCharsets.UTF_8);
+
+        IntStream.Builder foundIds = IntStream.builder();
+        Decoder decoder = new Decoder(0);
+        while (decoder.next()) {
+            if (decoder.contains(encodedText)) {
+                foundIds.add(ids[decoder.index]);
+            }
+        }
+        return foundIds.build().toArray();
+    }
+
+    /**
+     * Estimate the number of strings of this dictionary containing some text, without going through all strings.
+     * Strings are sampled from blocks evenly spread over the dictionary.
+     *
+     * @param text the text the counted strings should contain
+     * @param sampleSize the approximate number of strings to go through. If it is greater than the size
+     *                   of this dictionary, the exact number of strings is returned
+     * @return an estimate of the number of strings containing the provided text
+     */
+    public int estimateContaining(String text, int sampleSize) {
+        if (sampleSize >= ids.length) {
+            return findContaining(text).length;
+        }
+        byte[] encodedText = text.getBytes(StandardCharsets.UTF_8);
+
+        int blockStep = Math.max(1, blockOffsets.length / Math.max(1, sampleSize / BLOCK_SIZE));
+        int sampledStrings = 0;
+        int matches = 0;
+        for (int block=0; block<blockOffsets.length; block+=blockStep) {
+            Decoder decoder = new Decoder(block);
+
+            for (int i=0; i<BLOCK_SIZE && decoder.next(); i++) {
+                sampledStrings++;
+                if (decoder.contains(encodedText)) {
+                    matches++;
+                }
+            }
+        }
+        return (int) Math.round((double) matches * ids.length / sampledStrings);
+    }
+
+    private int compareToFirstStringOfBlock(int block, byte[] string) {
+        int[] position = {blockOffsets[block]};
+        int length = readVarInt(data, position);
+
+        return Arrays.compareUnsigned(data, position[0], position[0] + length, string, 0, string.length);
+    }
+
+    private class Decoder {
+
+        private final int[] position = new int[1];
+        private byte[] buffer = new byte[64];
+        private int length = 0;
+        private int index;
+
+        private Decoder(int block) {
+            index = block * BLOCK_SIZE - 1;
+            position[0] = block < blockOffsets.length ? blockOffsets[block] : data.length;
+        }
+
+        private boolean next() {
+            if (index + 1 >= ids.length) {
+                return false;
+            }
+            index++;
+
+            int sharedPrefixLength = index % BLOCK_SIZE == 0 ? 0 : readVarInt(data, position);
+            int suffixLength = readVarInt(data, position);
+
+            length = sharedPrefixLength + suffixLength;
+            if (length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+            }
+            System.arraycopy(data, position[0], buffer, sharedPrefixLength, suffixLength);
+            position[0] += suffixLength;
+
+            return true;
+        }
+
+        private boolean startsWith(byte[] prefix) {
+            return length >= prefix.length && Arrays.equals(buffer, 0, prefix.length, prefix, 0, prefix.length);
+        }
+
+        private boolean contains(byte[] text) {
+            for (int i=0; i<=length-text.length; i++) {
+                if (Arrays.equals(buffer, i, i + text.length, text, 0, text.length)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,64 @@
+package qupath.ui.javadocviewer.gui.components;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The keys used to search, rank, and highlight an {@link AutoCompleteTextFieldEntry}.
+ * <p>
+ * They are derived from the entry once, when the entry is created (see {@link #of(String, String, int)}), so that
+ * searching, ranking, and highlighting entries while the user types never derives strings.
+ * <p>
+ * The lower-cased text to use when filtering the entry is kept by the key. This costs more memory than only
+ * storing it in the {@link FrontCodedDictionary} of the {@link SuggestionStore} containing the entry, but reading
+ * it doesn't allocate, which matters more: it is read for each candidate when a query is searched among the matches
+ * of a previous query, and for each displayed entry. Keys created with {@link #of(String, String, int, Map)} share
+ * equal texts, so entries with the same text (for example overloads of a method, or methods with the same name in
+ * different classes) reference one string.
+ *
+ * @param textIndex the index of the text to use when filtering the entry in the name of the entry
+ * @param lowerCaseText the lower-cased text to use when filtering the entry
+ * @param rank the rank of the entry: entries with a lower rank come first
+ */
+public record SearchKey(int textIndex, String lowerCaseText, int rank) {
+
+    /**
+     * Derive the search keys of an entry. The lower-cased text of the returned key is not shared with other keys.
+     *
+     * @param name the name of the entry
+     * @param text the text to use when filtering the entry. It should be part of the name, otherwise the whole
+     *             name is used
+     * @param rank the rank of the entry: entries with a lower rank come first
+     * @return the search keys of the entry
+     */
+    public static SearchKey of(String name, String text, int rank) {
+        return of(name, text, rank, new HashMap<>());
+    }
+
+    /**
+     * Derive the search keys of an entry, sharing the lower-cased text of the key with the keys previously
+     * derived with the same map.
+     * <p>
+     * This is cheaper than {@link String#intern()} when many keys are created, because the map only contains
+     * the texts of the keys created with it.
+     *
+     * @param name the name of the entry
+     * @param text the text to use when filtering the entry. It should be part of the name, otherwise the whole
+     *             name is used
+     * @param rank the rank of the entry: entries with a lower rank come first
+     * @param sharedTexts the lower-cased texts of the keys previously derived with this map. The text of the returned
+     *                    key is added to it if it is not already present. The map is not thread-safe, so it should
+     *                    only be used by one thread at a time
+     * @return the search keys of the entry
+     */
+    public static SearchKey of(String name, String text, int rank, Map<String, String> sharedTexts) {
+        int textIndex = name.indexOf(text);
+        String lowerCaseText = (textIndex == -1 ? name : text).toLowerCase();
+
+        return new SearchKey(
+                textIndex == -1 ? 0 : textIndex,
+                sharedTexts.computeIfAbsent(lowerCaseText, t -> t),
+                rank
+        );
+    }
+}
@@ -0,0 +1,236 @@
+package qupath.ui.javadocviewer.gui.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The state of a search of some text among the suggestions of an {@link AutoCompletionTextField}.
+ * <p>
+ * Matches are ranked in two tiers: suggestions whose searchable text starts with the searched text
+ * (with exact matches first), and then suggestions whose searchable text only contains it. Within a tier,
+ * suggestions are sorted according to their order.
+ * <p>
+ * Matches are retrieved page by page with {@link #getMatches(int, int)}. The first tier is computed
+ * when the search is created, while the second tier is only computed when a page reaches it. Computed
+ * tiers are kept, so that later pages don't search again.
+ * <p>
+ * The position of the searched text in the searchable text of each match is computed once, when the match
+ * is found, so that highlighting matches doesn't search the text again (see {@link #getMatchIndex(AutoCompleteTextFieldEntry)}).
+ * <p>
+ * Searches are created by a {@link SuggestionSearchCache}. This class is not thread-safe.
+ *
+ * @param <T> the type of suggestions
+ */
+public class SuggestionSearch<T extends AutoCompleteTextFieldEntry> {
+
+    private static final int ESTIMATION_SAMPLE_SIZE = 4096;
+    private final String loweredCaseText;
+    private final List<SuggestionStore.Segment<T>> segments;
+    private final List<int[]> prefixMatchIds;
+    private final List<T> prefixMatches;
+    private final Map<T, Integer> otherMatchIndices = new IdentityHashMap<>();
+    private List<T> allMatches;
+    private int estimatedMatchCount = -1;
+
+    private SuggestionSearch(
+            String loweredCaseText,
+            List<SuggestionStore.Segment<T>> segments,
+            List<int[]> prefixMatchIds,
+            List<T> prefixMatches,
+            Set<T> exactMatches,
+            List<T> otherMatches,
+            Map<T, Integer> otherMatchIndices
+    ) {
+        this.loweredCaseText = loweredCaseText;
+        this.segments = segments;
+        this.prefixMatchIds = prefixMatchIds;
+        this.prefixMatches = prefixMatches.stream()
+                .sorted(Comparator.comparingInt((T entry) -> exactMatches.contains(entry) ? -1 : 1).thenComparing(Comparator.naturalOrder()))
+                .toList();
+        if (otherMatches != null) {
+            this.allMatches = Stream.concat(this.prefixMatches.stream(), otherMatches.stream().sorted()).toList();
+            this.otherMatchIndices.putAll(otherMatchIndices);
+        }
+    }
+
+    /**
+     * Start searching for some text among all suggestions of a snapshot of a {@link SuggestionStore}.
+     * The search only reads the snapshot, so it is not affected by later modifications of the store.
+     *
+     * @param loweredCaseText the lower-cased text to search for
+     * @param snapshot the snapshot containing the suggestions to search
+     * @return the search of the provided text
+     * @param <T> the type of suggestions
+     */
+    static <T extends AutoCompleteTextFieldEntry> SuggestionSearch<T> search(
+            String loweredCaseText,
+            SuggestionStore.Snapshot<T> snapshot
+    ) {
+        List<SuggestionStore.Segment<T>> segments = snapshot.getSegments();
+        List<int[]> prefixMatchIds = segments.stream()
+                .map(segment -> segment.searchableTexts().findByPrefix(loweredCaseText))
+                .toList();
+
+        // The texts of the suggestions are not stored outside the dictionaries, so exact matches are found there too
+        Set<T> exactMatches = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (SuggestionStore.Segment<T> segment: segments) {
+            for (int id: segment.searchableTexts().findEqual(loweredCaseText)) {
+                exactMatches.add(segment.suggestions().get(id));
+            }
+        }
+
+        return new SuggestionSearch<>(
+                loweredCaseText,
+                segments,
+                prefixMatchIds,
+                IntStream.range(0, segments.size())
+                        .boxed()
+                        .flatMap(i -> Arrays.stream(prefixMatchIds.get(i)).mapToObj(segments.get(i).suggestions()::get))
+                        .toList(),
+                exactMatches,
+                null,
+                null
+        );
+    }
+
+    /**
+     * Search for some text among a small number of candidates. All matches are computed immediately.
+     *
+     * @param loweredCaseText the lower-cased text to search for
+     * @param candidates the suggestions that may match the text
+     * @return the complete search of the provided text
+     * @param <T> the type of suggestions
+     */
+    static <T extends AutoCompleteTextFieldEntry> SuggestionSearch<T> searchAmong(String loweredCaseText, List<T> candidates) {
+        List<T> prefixMatches = new ArrayList<>();
+        Set<T> exactMatches = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<T> otherMatches = new ArrayList<>();
+        Map<T, Integer> otherMatchIndices = new IdentityHashMap<>();
+
+        for (T candidate: candidates) {
+            String searchableText = candidate.getLowerCaseSearchableText();
+            int matchIndex = searchableText.indexOf(loweredCaseText);
+
+            if (matchIndex == 0) {
+                prefixMatches.add(candidate);
+                if (searchableText.length() == loweredCaseText.length()) {
+                    exactMatches.add(candidate);
+                }
+            } else if (matchIndex > 0) {
+                otherMatches.add(candidate);
+                otherMatchIndices.put(candidate, matchIndex);
+            }
+        }
+
+        return new SuggestionSearch<>(loweredCaseText, null, null, prefixMatches, exactMatches, otherMatches, otherMatchIndices);
+    }
+
+    /**
+     * Get some ranked matches of this search.
+     *
+     * @param from the index (in the ranked matches) of the first match to return
+     * @param count the maximum number of matches to return
+     * @return an unmodifiable list of at most count ranked matches starting at the provided index. It is
+     * empty if there are no more matches
+     */
+    public List<T> getMatches(int from, int count) {
+        int to = from + count;
+        if (to <= prefixMatches.size()) {
+            return prefixMatches.subList(from, to);
+        }
+
+        List<T> matches = getAllMatches();
+        return matches.subList(Math.min(from, matches.size()), Math.min(to, matches.size()));
+    }
+
+    /**
+     * Indicate whether there are matches after the provided index. This may compute all matches.
+     *
+     * @param index the index (in the ranked matches) to check
+     * @return whether there are matches after the provided index
+     */
+    public boolean hasMatchesAfter(int index) {
+        return index + 1 < prefixMatches.size() || index + 1 < getAllMatches().size();
+    }
+
+    /**
+     * Get the position of the searched text in the searchable text of a match of this search.
+     *
+     * @param match a match returned by this search
+     * @return the index of the searched text in the lower-cased searchable text of the provided match
+     * (see {@link AutoCompleteTextFieldEntry#getLowerCaseSearchableText()}), or 0 if the provided entry is not a match
+     */
+    public int getMatchIndex(T match) {
+        return otherMatchIndices.getOrDefault(match, 0);
+    }
+
+    /**
+     * @return whether all matches of this search are computed
+     */
+    public boolean isComplete() {
+        return allMatches != null;
+    }
+
+    /**
+     * Get the number of matches of this search. If not all matches are computed, the number of
+     * matches is estimated from a sample of the suggestions, which doesn't go through all suggestions.
+     *
+     * @return the number of matches of this search, or an estimate if {@link #isComplete()} returns false
+     */
+    public int getMatchCount() {
+        if (isComplete()) {
+            return allMatches.size();
+        }
+
+        if (estimatedMatchCount == -1) {
+            // The sample is shared between segments according to their sizes
+            int numberOfSuggestions = segments.stream().mapToInt(segment -> segment.searchableTexts().size()).sum();
+            int estimate = 0;
+            for (SuggestionStore.Segment<T> segment: segments) {
+                estimate += segment.searchableTexts().estimateContaining(
+                        loweredCaseText,
+                        (int) Math.max(1, (long) ESTIMATION_SAMPLE_SIZE * segment.searchableTexts().size() / Math.max(1, numberOfSuggestions))
+                );
+            }
+
+            estimatedMatchCount = Math.max(prefixMatches.size(), estimate);
+        }
+        return estimatedMatchCount;
+    }
+
+    /**
+     * Get all ranked matches of this search. This computes all matches if they are not computed yet.
+     *
+     * @return an unmodifiable list of all ranked matches of this search
+     */
+    public List<T> getAllMatches() {
+        if (allMatches == null) {
+            Stream<T> otherMatches = IntStream.range(0, segments.size())
+                    .boxed()
+                    .flatMap(i -> {
+                        SuggestionStore.Segment<T> segment = segments.get(i);
+                        Set<Integer> prefixMatchIdSet = Arrays.stream(prefixMatchIds.get(i)).boxed().collect(Collectors.toSet());
+
+                        return Arrays.stream(segment.searchableTexts().findContaining(loweredCaseText))
+                                .filter(id -> !prefixMatchIdSet.contains(id))
+                                .mapToObj(segment.suggestions()::get);
+                    });
+
+            List<T> sortedOtherMatches = otherMatches.sorted().toList();
+            for (T match: sortedOtherMatches) {
+                otherMatchIndices.put(match, Math.max(0, match.getLowerCaseSearchableText().indexOf(loweredCaseText)));
+            }
+            allMatches = Stream.concat(prefixMatches.stream(), sortedOtherMatches.stream()).toList();
+        }
+        return allMatches;
+    }
+}
@@ -0,0 +1,99 @@
+package qupath.ui.javadocviewer.gui.components;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The searches of the last queries made on a {@link SuggestionStore}.
+ * <p>
+ * A query whose search is cached is answered without going through the suggestions again. Suggestions
+ * matching a query also match all shorter versions of this query, so if all matches of a shorter query
+ * are known and are not too many, a query is only searched among them. The cache is cleared when the
+ * suggestions of the store change.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @param <T> the type of suggestions
+ */
+public class SuggestionSearchCache<T extends AutoCompleteTextFieldEntry> {
+
+    private final SuggestionStore<T> suggestions;
+    private final int maxCandidates;
+    private final Map<String, SuggestionSearch<T>> cachedSearches;
+    private long cachedSuggestionsVersion = -1;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Create the cache.
+     *
+     * @param suggestions the store containing the suggestions to search
+     * @param maxQueries the maximum number of queries whose search is cached. The least recently used
+     *                   searches are discarded first
+     * @param maxCandidates the maximum number of matches a shorter query can have for its matches to be
+     *                      used as the only candidates of a query
+     */
+    public SuggestionSearchCache(SuggestionStore<T> suggestions, int maxQueries, int maxCandidates) {
+        this.suggestions = suggestions;
+        this.maxCandidates = maxCandidates;
+        this.cachedSearches = new LinkedHashMap<>(maxQueries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SuggestionSearch<T>> eldest) {
+                return size() > maxQueries;
+            }
+        };
+    }
+
+    /**
+     * Get the search of some text among the current suggestions of the store, from the cache if possible.
+     *
+     * @param loweredCaseText the lower-cased text to search for
+     * @return the search of the provided text
+     */
+    public SuggestionSearch<T> getSearch(String loweredCaseText) {
+        SuggestionStore.Snapshot<T> snapshot = suggestions.getSnapshot();
+        if (cachedSuggestionsVersion != snapshot.getVersion()) {
+            cachedSearches.clear();
+            cachedSuggestionsVersion = snapshot.getVersion();
+        }
+
+        SuggestionSearch<T> search = cachedSearches.get(loweredCaseText);
+        if (search != null) {
+            hits++;
+            return search;
+        }
+        misses++;
+
+        Optional<List<T>> candidates = getCachedCandidates(loweredCaseText);
+        if (candidates.isPresent()) {
+            search = SuggestionSearch.searchAmong(loweredCaseText, candidates.get());
+        } else {
+            search = SuggestionSearch.search(loweredCaseText, snapshot);
+        }
+
+        cachedSearches.put(loweredCaseText, search);
+        return search;
+    }
+
+    /**
+     * @return the proportion of queries whose search was retrieved from this cache instead of being
+     * computed, between 0 and 1, or 0 if no query was made
+     */
+    public double getHitRate() {
+        long queries = hits + misses;
+        return queries == 0 ? 0 : (double) hits / queries;
+    }
+
+    private Optional<List<T>> getCachedCandidates(String loweredCaseText) {
+        for (int i=loweredCaseText.length()-1; i>0; i--) {
+            SuggestionSearch<T> cachedSearch = cachedSearches.get(loweredCaseText.substring(0, i));
+
+            if (cachedSearch != null && cachedSearch.isComplete() && cachedSearch.getMatchCount() < maxCandidates) {
+                return Optional.of(cachedSearch.getAllMatches());
+            }
+        }
+        return Optional.empty();
+    }
+}
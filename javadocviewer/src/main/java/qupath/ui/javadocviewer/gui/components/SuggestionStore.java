@@ -0,0 +1,189 @@
+package qupath.ui.javadocviewer.gui.components;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * A thread-safe store of the suggestions of an {@link AutoCompletionTextField}.
+ * <p>
+ * Suggestions are grouped in segments, one per source (for example one per Javadoc). A segment is added,
+ * replaced, or removed as a whole with {@link #put(Object, List)} and {@link #remove(Object)}, which can be
+ * called from any thread. The searchable texts of a segment are indexed by the thread adding the segment,
+ * so that indexing doesn't happen on the JavaFX Application Thread. The index of a segment stores the lower-cased
+ * searchable texts of its suggestions compactly for prefix searches, in addition to the texts kept by the
+ * {@link SearchKey} of each suggestion (see {@link FrontCodedDictionary} for this trade-off).
+ * <p>
+ * Readers get an immutable {@link Snapshot} of the store with {@link #getSnapshot()}. This doesn't lock, and
+ * a snapshot is never modified, so searches can run concurrently with modifications of the store.
+ *
+ * @param <T> the type of suggestions
+ */
+public class SuggestionStore<T extends AutoCompleteTextFieldEntry> {
+
+    private final AtomicReference<Snapshot<T>> snapshot = new AtomicReference<>(new Snapshot<>(0, List.of()));
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * An immutable state of a {@link SuggestionStore}.
+     *
+     * @param <T> the type of suggestions
+     */
+    public static class Snapshot<T extends AutoCompleteTextFieldEntry> {
+
+        private final long version;
+        private final List<Segment<T>> segments;
+
+        private Snapshot(long version, List<Segment<T>> segments) {
+            this.version = version;
+            this.segments = segments;
+        }
+
+        /**
+         * @return a number incremented each time the store is modified
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the total number of suggestions of this snapshot
+         */
+        public int size() {
+            return segments.stream().mapToInt(segment -> segment.suggestions().size()).sum();
+        }
+
+        /**
+         * @return the segments of this snapshot, in the order their sources were first added
+         */
+        List<Segment<T>> getSegments() {
+            return segments;
+        }
+    }
+
+    /**
+     * The suggestions of a source.
+     *
+     * @param source the source of the suggestions
+     * @param suggestions the suggestions of the source
+     * @param searchableTexts the lower-cased searchable texts of the suggestions. The ID of each text
+     *                        is the index of its suggestion in the suggestions list
+     * @param <T> the type of suggestions
+     */
+    record Segment<T extends AutoCompleteTextFieldEntry>(Object source, List<T> suggestions, FrontCodedDictionary searchableTexts) {}
+
+    /**
+     * Add the suggestions of a source, replacing any suggestions previously added for this source.
+     * The suggestions are indexed by the calling thread.
+     *
+     * @param source the source of the suggestions
+     * @param suggestions the suggestions of the source
+     */
+    public void put(Object source, List<? extends T> suggestions) {
+        List<T> segmentSuggestions = List.copyOf(suggestions);
+        Segment<T> segment = new Segment<>(
+                source,
+                segmentSuggestions,
+                new FrontCodedDictionary(segmentSuggestions.stream()
+                        .map(AutoCompleteTextFieldEntry::getLowerCaseSearchableText)
+                        .toList()
+                )
+        );
+
+        update(segments -> {
+            int index = indexOf(segments, source);
+
+            if (index == -1) {
+                segments.add(segment);
+            } else {
+                segments.set(index, segment);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Remove the suggestions of a source. Nothing happens if there are no suggestions for this source.
+     *
+     * @param source the source whose suggestions should be removed
+     */
+    public void remove(Object source) {
+        update(segments -> {
+            int index = indexOf(segments, source);
+
+            if (index == -1) {
+                return false;
+            } else {
+                segments.remove(index);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Remove all suggestions.
+     */
+    public void clear() {
+        update(segments -> {
+            boolean modified = !segments.isEmpty();
+            segments.clear();
+            return modified;
+        });
+    }
+
+    /**
+     * @return the current state of this store. It won't change if this store is modified
+     */
+    public Snapshot<T> getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Add a listener called each time this store is modified. The listener is called from the thread that
+     * modified the store.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener previously added with {@link #addListener(Runnable)}.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    private void update(Predicate<List<Segment<T>>> update) {
+        Snapshot<T> previousSnapshot;
+        Snapshot<T> newSnapshot;
+        do {
+            previousSnapshot = snapshot.get();
+
+            // The update returns false if it didn't modify the segments
+            List<Segment<T>> segments = new ArrayList<>(previousSnapshot.getSegments());
+            if (!update.test(segments)) {
+                return;
+            }
+            newSnapshot = new Snapshot<>(previousSnapshot.getVersion() + 1, List.copyOf(segments));
+        } while (!snapshot.compareAndSet(previousSnapshot, newSnapshot));
+
+        for (Runnable listener: listeners) {
+            listener.run();
+        }
+    }
+
+    private static <T extends AutoCompleteTextFieldEntry> int indexOf(List<Segment<T>> segments, Object source) {
+        for (int i=0; i<segments.size(); i++) {
+            if (segments.get(i).source().equals(source)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,14 +1,28 @@
 package qupath.ui.javadocviewer.gui.viewer;
 
 import qupath.ui.javadocviewer.gui.components.AutoCompleteTextFieldEntry;
+import qupath.ui.javadocviewer.gui.components.SearchKey;
 import qupath.ui.javadocviewer.core.JavadocElement;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * An {@link AutoCompleteTextFieldEntry} that represents a {@link JavadocElement}.
+ * <p>
+ * The search keys of the entry are derived when it is created, so entries should be created outside the
+ * JavaFX Application Thread. This class is immutable.
+ * <p>
+ * These are the entries {@link JavadocViewer} adds to its search field. {@link #createEntries(List, Consumer, Executor)}
+ * creates them the way the viewer does, so that their creation and their search can be measured without displaying
+ * a viewer.
  */
-class JavadocEntry implements AutoCompleteTextFieldEntry {
+public class JavadocEntry implements AutoCompleteTextFieldEntry {
 
     private static final Map<String, Integer> CATEGORY_ORDER = Map.of(
             "Class", 1,
@@ -18,9 +32,10 @@ class JavadocEntry implements AutoCompleteTextFieldEntry {
             "Static", 5,
             "Method", 6
     );
+    private static final int ENTRIES_PER_CHUNK = 16384;
     private final JavadocElement javadocElement;
     private final Runnable onSelected;
-    private String searchableText;
+    private final SearchKey searchKey;
 
     /**
      * Create a Javadoc entry from a Javadoc element.
@@ -29,8 +44,68 @@ class JavadocEntry implements AutoCompleteTextFieldEntry {
      * @param onSelected a function to call when this element is selected
      */
     public JavadocEntry(JavadocElement javadocElement, Runnable onSelected) {
+        this(javadocElement, onSelected, new HashMap<>());
+    }
+
+    private JavadocEntry(JavadocElement javadocElement, Runnable onSelected, Map<String, String> sharedTexts) {
         this.javadocElement = javadocElement;
         this.onSelected = onSelected;
+        this.searchKey = SearchKey.of(
+                javadocElement.name(),
+                getSearchableText(javadocElement),
+                CATEGORY_ORDER.getOrDefault(javadocElement.category(), 0),
+                sharedTexts
+        );
+    }
+
+    /**
+     * Create the entries of some Javadoc elements in the background.
+     * <p>
+     * The elements are split in chunks that are submitted to the provided executor as independent tasks, so that
+     * the entries of a large Javadoc are created in parallel, the number of threads of the executor bounds the
+     * parallelism, and no thread of the executor is blocked waiting for other chunks. Entries of the same chunk
+     * share equal search texts (see {@link SearchKey#of(String, String, int, Map)}).
+     *
+     * @param javadocElements the elements whose entries should be created
+     * @param onSelected a function to call with the element of an entry when this entry is selected
+     * @param executor the executor to use to create the entries
+     * @return a CompletableFuture (that completes exceptionally if a chunk fails) with the entries representing the
+     * provided elements, in the same order
+     */
+    public static CompletableFuture<List<JavadocEntry>> createEntries(
+            List<JavadocElement> javadocElements,
+            Consumer<JavadocElement> onSelected,
+            Executor executor
+    ) {
+        List<CompletableFuture<List<JavadocEntry>>> chunks = new ArrayList<>();
+        for (int start=0; start<Math.max(1, javadocElements.size()); start+=ENTRIES_PER_CHUNK) {
+            List<JavadocElement> chunk = javadocElements.subList(start, Math.min(start + ENTRIES_PER_CHUNK, javadocElements.size()));
+
+            chunks.add(CompletableFuture.supplyAsync(
+                    () -> {
+                        Map<String, String> sharedTexts = new HashMap<>();
+                        return chunk.stream()
+                                .map(javadocElement -> new JavadocEntry(javadocElement, () -> onSelected.accept(javadocElement), sharedTexts))
+                                .toList();
+                    },
+                    executor
+            ));
+        }
+
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<JavadocEntry> entries = new ArrayList<>(javadocElements.size());
+            for (CompletableFuture<List<JavadocEntry>> chunk: chunks) {
+                entries.addAll(chunk.join());
+            }
+            return entries;
+        });
+    }
+
+    /**
+     * @return the Javadoc element represented by this entry
+     */
+    JavadocElement getJavadocElement() {
+        return javadocElement;
     }
 
     @Override
@@ -39,47 +114,8 @@ class JavadocEntry implements AutoCompleteTextFieldEntry {
     }
 
     @Override
-    public String getSearchableText() {
-        if (searchableText == null) {
-            searchableText = switch (javadocElement.category()) {
-                // expect "some.package.Class". Retain "Class"
-                case "Class", "Interface" -> javadocElement.name().substring(javadocElement.name().lastIndexOf(".") + 1);
-                // expects "some.package.Class.Enum" or "Class.Enum.variable". Retain "Class.Enum" or "Enum.variable"
-                case "Enum" -> {
-                    int lastPointIndex = javadocElement.name().lastIndexOf(".");
-                    if (lastPointIndex > -1) {
-                        int secondLastPointIndex = javadocElement.name().lastIndexOf(".", lastPointIndex-1);
-                        if (secondLastPointIndex > -1) {
-                            yield javadocElement.name().substring(secondLastPointIndex+1);
-                        }
-                    }
-                    yield javadocElement.name();
-                }
-                // expect "Class.function(Parameter)". Retain "function"
-                case "Static", "Method" -> {
-                    int pointIndex = javadocElement.name().indexOf(".");
-                    int parenthesisIndex = javadocElement.name().indexOf("(");
-
-                    if (parenthesisIndex > -1) {
-                        yield javadocElement.name().substring(pointIndex+1, parenthesisIndex);
-                    } else {
-                        yield javadocElement.name().substring(pointIndex+1);
-                    }
-                }
-                // expect "Class(Parameter)". Retain "Class"
-                case "Constructor" -> {
-                    int parenthesisIndex = javadocElement.name().indexOf("(");
-
-                    if (parenthesisIndex > -1) {
-                        yield javadocElement.name().substring(0, parenthesisIndex);
-                    } else {
-                        yield javadocElement.name();
-                    }
-                }
-                default -> javadocElement.name();
-            };
-        }
-        return searchableText;
+    public SearchKey getSearchKey() {
+        return searchKey;
     }
 
     @Override
@@ -94,7 +130,7 @@ class JavadocEntry implements AutoCompleteTextFieldEntry {
 
     @Override
     public int compareTo(AutoCompleteTextFieldEntry otherEntry) {
-        int categoryComparison = CATEGORY_ORDER.getOrDefault(getCategory(), 0) - CATEGORY_ORDER.getOrDefault(otherEntry.getCategory(), 0);
+        int categoryComparison = Integer.compare(searchKey.rank(), otherEntry.getSearchKey().rank());
         if (categoryComparison != 0) {
             return categoryComparison;
         }
@@ -106,4 +142,44 @@ class JavadocEntry implements AutoCompleteTextFieldEntry {
     public String toString() {
         return String.format("Javadoc entry of %s", javadocElement);
     }
+
+    private static String getSearchableText(JavadocElement javadocElement) {
+        return switch (javadocElement.category()) {
+            // expect "some.package.Class". Retain "Class"
+            case "Class", "Interface" -> javadocElement.name().substring(javadocElement.name().lastIndexOf(".") + 1);
+            // expects "some.package.Class.Enum" or "Class.Enum.variable". Retain "Class.Enum" or "Enum.variable"
+            case "Enum" -> {
+                int lastPointIndex = javadocElement.name().lastIndexOf(".");
+                if (lastPointIndex > -1) {
+                    int secondLastPointIndex = javadocElement.name().lastIndexOf(".", lastPointIndex-1);
+                    if (secondLastPointIndex > -1) {
+                        yield javadocElement.name().substring(secondLastPointIndex+1);
+                    }
+                }
+                yield javadocElement.name();
+            }
+            // expect "Class.function(Parameter)". Retain "function"
+            case "Static", "Method" -> {
+                int pointIndex = javadocElement.name().indexOf(".");
+                int parenthesisIndex = javadocElement.name().indexOf("(");
+
+                if (parenthesisIndex > -1) {
+                    yield javadocElement.name().substring(pointIndex+1, parenthesisIndex);
+                } else {
+                    yield javadocElement.name().substring(pointIndex+1);
+                }
+            }
+            // expect "Class(Parameter)". Retain "Class"
+            case "Constructor" -> {
+                int parenthesisIndex = javadocElement.name().indexOf("(");
+
+                if (parenthesisIndex > -1) {
+                    yield javadocElement.name().substring(0, parenthesisIndex);
+                } else {
+                    yield javadocElement.name();
+                }
+            }
+            default -> javadocElement.name();
+        };
+    }
 }
@@ -0,0 +1,413 @@
+package qupath.ui.javadocviewer.gui.viewer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qupath.ui.javadocviewer.core.JavadocCache;
+import qupath.ui.javadocviewer.core.JavadocElement;
+import qupath.ui.javadocviewer.core.JavadocIndexBundle;
+import qupath.ui.javadocviewer.core.JavadocParseOptions;
+import qupath.ui.javadocviewer.core.JavadocRegistry;
+import qupath.ui.javadocviewer.core.JavadocSymbolIndex;
+import qupath.ui.javadocviewer.core.JavadocsFinder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * Asynchronously search for Javadocs and read their elements.
+ * <p>
+ * Each Javadoc is indexed with a {@link JavadocSymbolIndex} as soon as it is read, so that
+ * symbols can be looked up before all Javadocs are loaded. Indexed Javadocs are then stored
+ * in a {@link JavadocCache}, which may evict them from memory.
+ * <p>
+ * The packages documented by each Javadoc are read from its list of packages while its elements are
+ * loaded, so that a fully qualified symbol can be looked up as soon as the Javadoc owning its package
+ * is loaded, whatever the state of the other Javadocs.
+ * <p>
+ * Javadocs are retrieved from the {@link JavadocRegistry}, so that loaders of the same Javadocs
+ * share their elements. A Javadoc is released from the registry when it is evicted from the cache
+ * of this loader or when this loader is closed, and acquired again when it is read again from disk
+ * after an eviction (so that the instance of another consumer is used if there is one).
+ * <p>
+ * This class is thread-safe.
+ */
+class JavadocLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(JavadocLoader.class);
+    private final JavadocCache javadocCache = new JavadocCache(this::reacquire);
+    private final CompletableFuture<Void> loadingComplete = new CompletableFuture<>();
+    private final Set<URI> acquiredJavadocs = new HashSet<>();
+    private final Map<URI, Source> sources = new LinkedHashMap<>();
+    private final List<PendingLookup> pendingLookups = new ArrayList<>();
+    private final Executor executor;
+    private final JavadocParseOptions parseOptions;
+    private final CompletableFuture<List<URI>> javadocUris;
+    private final CompletableFuture<List<CompletableFuture<URI>>> javadocSources;
+    private final CompletableFuture<List<URI>> javadocs;
+    private boolean closed = false;
+    private boolean allSourcesKnown = false;
+    private record Source(CompletableFuture<URI> loading, CompletableFuture<Set<String>> packages) {}
+    private record PendingLookup(String name, CompletableFuture<List<URI>> owners) {}
+
+    /**
+     * Start loading Javadocs.
+     *
+     * @param executor the executor to use to search for Javadocs, to read the index bundle, to read and index the
+     *                 elements of the Javadocs (see {@link JavadocRegistry#acquire(URI, JavadocIndexBundle, JavadocParseOptions, Executor)}),
+     *                 and to run the tasks of the users of this loader (see {@link #getExecutor()})
+     * @param indexBundle the path of an index bundle containing prebuilt elements of some Javadocs. Can be null.
+     *                    The Javadocs of the bundle are loaded without waiting for the search of the provided URIs,
+     *                    which then only adds the Javadocs missing from the bundle
+     * @param parseOptions the options restricting the elements to read from the Javadocs
+     * @param urisToSearch URIs to search for Javadocs. See {@link JavadocsFinder#findJavadocs(URI...)}
+     */
+    public JavadocLoader(Executor executor, Path indexBundle, JavadocParseOptions parseOptions, List<URI> urisToSearch) {
+        this.executor = executor;
+        this.parseOptions = parseOptions;
+        javadocUris = JavadocsFinder.findJavadocUris(executor, urisToSearch.toArray(new URI[0]));
+        javadocSources = CompletableFuture.supplyAsync(() -> readIndexBundle(indexBundle), executor).thenCompose(bundle -> {
+            Set<URI> bundledUris = bundle == null ? Set.of() : bundle.getUris();
+            List<CompletableFuture<URI>> bundledSources = bundledUris.stream()
+                    .map(uri -> loadSource(uri, bundle, false))
+                    .toList();
+
+            return javadocUris.handle((uris, error) -> {
+                if (error != null) {
+                    logger.debug("Error when searching for Javadocs. Only using the Javadocs of the index bundle", error);
+                    return bundledSources;
+                }
+
+                return Stream.concat(
+                        bundledSources.stream(),
+                        uris.stream()
+                                .filter(uri -> !bundledUris.contains(uri))
+                                .map(uri -> loadSource(uri, bundle, true))
+                ).toList();
+            });
+        });
+        javadocs = javadocSources.thenCompose(sources -> {
+            List<CompletableFuture<URI>> successfulSources = sources.stream()
+                    .map(source -> source.exceptionally(e -> {
+                        logger.debug("Error when loading Javadoc. Skipping it", e);
+                        return null;
+                    }))
+                    .toList();
+
+            return CompletableFuture.allOf(successfulSources.toArray(new CompletableFuture<?>[0])).thenApply(v -> successfulSources.stream()
+                    .map(CompletableFuture::join)
+                    .filter(Objects::nonNull)
+                    .toList()
+            );
+        });
+        javadocSources.whenComplete((result, error) -> {
+            synchronized (sources) {
+                allSourcesKnown = true;
+            }
+            updatePendingLookups();
+        });
+        javadocs.whenComplete((result, error) -> setLoadingComplete());
+
+        javadocCache.addListener(new JavadocCache.Listener() {
+            @Override
+            public void onJavadocLoaded(JavadocSymbolIndex javadoc) {}
+
+            @Override
+            public void onJavadocEvicted(URI uri) {
+                release(uri);
+            }
+        });
+    }
+
+    /**
+     * @return a CompletableFuture that completes when all Javadocs are loaded, with the URIs of
+     * the Javadocs that could be loaded
+     */
+    public CompletableFuture<List<URI>> getJavadocs() {
+        return javadocs;
+    }
+
+    /**
+     * @return the executor given to this loader, which should be used to run background tasks on the
+     * Javadocs of this loader
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return the cache containing the Javadocs loaded so far
+     */
+    public JavadocCache getJavadocCache() {
+        return javadocCache;
+    }
+
+    /**
+     * Find the elements corresponding to a symbol (see {@link JavadocSymbolIndex#lookup(String)}).
+     * <p>
+     * If the symbol is fully qualified (it starts with a package name, for example {@code some.package.Class#function}),
+     * the returned CompletableFuture completes as soon as the Javadocs documenting this package are loaded: other
+     * Javadocs, which may be slow to load, are not waited for. The Javadocs documenting a package are known once
+     * their list of packages is read, or once they are loaded if they don't have such list. If no Javadoc
+     * documents the package, the returned CompletableFuture completes once the packages of all Javadocs are known.
+     * <p>
+     * Otherwise (for example {@code Class#function}), any Javadoc may contain the symbol, so the returned
+     * CompletableFuture completes once all Javadocs are loaded.
+     * <p>
+     * Then, if the Javadocs that may contain the symbol are in memory, it is completed immediately. Otherwise,
+     * Javadocs evicted from memory that may contain the symbol are read again with the executor of this loader.
+     *
+     * @param symbol the symbol to search for
+     * @return a CompletableFuture with the elements corresponding to the provided symbol. The list is empty
+     * if the symbol wasn't found or if this loader was closed
+     */
+    public CompletableFuture<List<JavadocElement>> lookup(String symbol) {
+        String name = getName(symbol);
+
+        CompletableFuture<List<URI>> owners;
+        if (isQualified(name)) {
+            owners = new CompletableFuture<>();
+            synchronized (sources) {
+                Optional<List<URI>> knownOwners = isClosed() ? Optional.of(List.of()) : findOwners(name);
+
+                if (knownOwners.isPresent()) {
+                    owners.complete(knownOwners.get());
+                } else {
+                    pendingLookups.add(new PendingLookup(name, owners));
+                }
+            }
+        } else {
+            owners = loadingComplete.thenApply(v -> javadocCache.getUris());
+        }
+
+        return owners.thenCompose(uris -> {
+            List<URI> candidates = javadocCache.findCandidates(getSimpleName(name)).stream()
+                    .filter(uris::contains)
+                    .toList();
+
+            if (candidates.stream().allMatch(javadocCache::isLoaded)) {
+                return CompletableFuture.completedFuture(lookup(symbol, candidates));
+            } else {
+                return CompletableFuture.supplyAsync(() -> lookup(symbol, candidates), executor);
+            }
+        });
+    }
+
+    /**
+     * Stop loading Javadocs and release the resources of this loader: the search for Javadocs is interrupted,
+     * the Javadocs of this loader are released from the {@link JavadocRegistry} (which interrupts their loading
+     * if no other consumer uses them), and the cache of this loader is cleared. Pending lookups complete with an
+     * empty list. The executor of this loader is not shut down.
+     * <p>
+     * This loader cannot load Javadocs anymore after this call. Calling this function several times has no effect.
+     */
+    public void close() {
+        synchronized (acquiredJavadocs) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            for (URI uri: acquiredJavadocs) {
+                JavadocRegistry.getInstance().release(uri, parseOptions);
+            }
+            acquiredJavadocs.clear();
+        }
+        logger.debug("Javadoc loader closed");
+
+        javadocUris.cancel(true);
+        javadocSources.cancel(true);
+        javadocs.cancel(true);
+
+        synchronized (this) {
+            javadocCache.clear();
+            setLoadingComplete();
+        }
+
+        List<PendingLookup> lookupsToComplete;
+        synchronized (sources) {
+            lookupsToComplete = List.copyOf(pendingLookups);
+            pendingLookups.clear();
+        }
+        for (PendingLookup lookup: lookupsToComplete) {
+            lookup.owners().complete(List.of());
+        }
+    }
+
+    private CompletableFuture<URI> loadSource(URI uri, JavadocIndexBundle indexBundle, boolean readPackageList) {
+        CompletableFuture<JavadocSymbolIndex> javadoc = acquire(uri, indexBundle);
+        CompletableFuture<URI> loading = javadoc.thenApply(this::addLoadedJavadoc);
+
+        // The packages are known either from the list of packages (usually much faster to read than the
+        // elements) or from the loaded elements, whichever comes first. Bundled Javadocs are loaded quickly,
+        // so their list of packages is not read
+        CompletableFuture<Set<String>> packages = new CompletableFuture<>();
+        if (readPackageList) {
+            JavadocsFinder.readPackages(uri, executor).whenComplete((packageNames, error) -> {
+                if (error == null) {
+                    packages.complete(packageNames);
+                } else {
+                    logger.debug("Cannot read packages of {}. Waiting for its elements", uri, error);
+                }
+            });
+        }
+        javadoc.whenComplete((index, error) -> packages.complete(index == null ? Set.of() : index.getPackages()));
+
+        synchronized (sources) {
+            sources.putIfAbsent(uri, new Source(loading, packages));
+        }
+        loading.whenComplete((result, error) -> updatePendingLookups());
+        packages.whenComplete((result, error) -> updatePendingLookups());
+
+        return loading;
+    }
+
+    private void updatePendingLookups() {
+        Map<CompletableFuture<List<URI>>, List<URI>> lookupsToComplete = new LinkedHashMap<>();
+
+        synchronized (sources) {
+            Iterator<PendingLookup> iterator = pendingLookups.iterator();
+            while (iterator.hasNext()) {
+                PendingLookup lookup = iterator.next();
+
+                Optional<List<URI>> owners = findOwners(lookup.name());
+                if (owners.isPresent()) {
+                    iterator.remove();
+                    lookupsToComplete.put(lookup.owners(), owners.get());
+                }
+            }
+        }
+
+        lookupsToComplete.forEach(CompletableFuture::complete);
+    }
+
+    private Optional<List<URI>> findOwners(String name) {
+        // Must be called while holding the lock on sources. The owners are returned once they are all
+        // loaded (or failed to load), or once it is known that no Javadoc documents the package of the name
+        boolean allPackagesKnown = allSourcesKnown;
+        List<URI> owners = new ArrayList<>();
+        boolean allOwnersLoaded = true;
+
+        for (Map.Entry<URI, Source> entry: sources.entrySet()) {
+            Set<String> packages = entry.getValue().packages().getNow(null);
+
+            if (packages == null) {
+                allPackagesKnown = false;
+            } else if (packages.stream().anyMatch(packageName -> name.startsWith(packageName + "."))) {
+                owners.add(entry.getKey());
+                allOwnersLoaded = allOwnersLoaded && entry.getValue().loading().isDone();
+            }
+        }
+
+        if (owners.isEmpty()) {
+            return allPackagesKnown ? Optional.of(List.of()) : Optional.empty();
+        } else {
+            return allOwnersLoaded ? Optional.of(owners) : Optional.empty();
+        }
+    }
+
+    private CompletableFuture<JavadocSymbolIndex> acquire(URI uri, JavadocIndexBundle indexBundle) {
+        synchronized (acquiredJavadocs) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException(String.format("Cannot load %s: loader closed", uri)));
+            } else if (acquiredJavadocs.add(uri)) {
+                return JavadocRegistry.getInstance().acquire(uri, indexBundle, parseOptions, executor);
+            } else {
+                return CompletableFuture.failedFuture(new IllegalStateException(String.format("%s already loaded", uri)));
+            }
+        }
+    }
+
+    private JavadocSymbolIndex reacquire(JavadocSymbolIndex javadoc) {
+        URI uri = javadoc.getJavadoc().uri();
+
+        synchronized (acquiredJavadocs) {
+            if (closed || !acquiredJavadocs.add(uri)) {
+                return javadoc;
+            }
+            return JavadocRegistry.getInstance().acquire(javadoc, parseOptions);
+        }
+    }
+
+        private void release(URI uri) {
+        synchronized (acquiredJavadocs) {
+            if (acquiredJavadocs.remove(uri)) {
+                JavadocRegistry.getInstance().release(uri, parseOptions);
+            }
+        }
+    }
+
+    private List<JavadocElement> lookup(String symbol, List<URI> javadocUris) {
+        return javadocUris.stream()
+                .map(javadocCache::get)
+                .flatMap(Optional::stream)
+                .map(javadoc -> javadoc.lookup(symbol))
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    private synchronized URI addLoadedJavadoc(JavadocSymbolIndex javadoc) {
+        if (isClosed()) {
+            return javadoc.getJavadoc().uri();
+        }
+
+        javadocCache.add(javadoc);
+
+        return javadoc.getJavadoc().uri();
+    }
+
+    private boolean isClosed() {
+        synchronized (acquiredJavadocs) {
+            return closed;
+        }
+    }
+
+    private void setLoadingComplete() {
+        loadingComplete.complete(null);
+    }
+
+    private static String getName(String symbol) {
+        // "some.package.Class#function(Parameter)" -> "some.package.Class.function"
+        String name = symbol.strip().replace('#', '.');
+        int parenthesisIndex = name.indexOf('(');
+        if (parenthesisIndex > -1) {
+            name = name.substring(0, parenthesisIndex);
+        }
+        return name;
+    }
+
+    private static String getSimpleName(String name) {
+        // "some.package.Class.function" -> "function"
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    private static boolean isQualified(String name) {
+        // Package names start with a lower case letter, unlike class names
+        return name.indexOf('.') > 0 && Character.isLowerCase(name.charAt(0));
+    }
+
+    private static JavadocIndexBundle readIndexBundle(Path indexBundle) {
+        if (indexBundle == null) {
+            return null;
+        }
+
+        try {
+            return JavadocIndexBundle.read(indexBundle);
+        } catch (IOException e) {
+            logger.warn("Cannot read index bundle {}. Javadocs will be parsed", indexBundle, e);
+            return null;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package qupath.ui.javadocviewer.gui.viewer;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.ReadOnlyStringProperty;
@@ -10,33 +11,73 @@ import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.ListCell;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebHistory;
 import javafx.scene.web.WebView;
-import qupath.ui.javadocviewer.gui.components.AutoCompletionTextField;
+import javafx.util.Duration;
 import qupath.ui.javadocviewer.core.Javadoc;
+import qupath.ui.javadocviewer.core.JavadocCache;
+import qupath.ui.javadocviewer.core.JavadocElement;
+import qupath.ui.javadocviewer.core.JavadocIndexBundle;
+import qupath.ui.javadocviewer.core.JavadocMirror;
+import qupath.ui.javadocviewer.core.JavadocParseOptions;
+import qupath.ui.javadocviewer.core.JavadocRegistry;
+import qupath.ui.javadocviewer.core.JavadocSymbolIndex;
+import qupath.ui.javadocviewer.gui.components.AutoCompletionTextField;
 import qupath.ui.javadocviewer.core.JavadocsFinder;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * A window to browse several Javadocs found by the {@link JavadocsFinder}.
  * An {@link AutoCompletionTextField} allows to search for Javadoc elements.
+ * <p>
+ * Pages are displayed in tabs. Only the most recently used tabs keep their rendered page in memory
+ * (see {@link #setMaxLiveTabs(int)}), and other tabs load their page again when they are selected.
+ * <p>
+ * Javadocs are loaded in the background. {@link #close()} should be called when the viewer
+ * is not used anymore, to stop the loading and release the elements of the Javadocs.
  */
 public class JavadocViewer extends BorderPane {
 
     private static final ResourceBundle resources = ResourceBundle.getBundle("qupath.ui.javadocviewer.strings");
     private static final Pattern REDIRECTION_PATTERN = Pattern.compile("window\\.location\\.replace\\(['\"](.*?)['\"]\\)");
-    private static final List<String> CATEGORIES_TO_SKIP = List.of("package", "module", "Variable", "Exception", "Annotation", "Element");
-    private final WebView webView = new WebView();
+    private static final Set<String> CATEGORIES_TO_SKIP = Set.of("package", "module", "Variable", "Exception", "Annotation", "Element");
+    /**
+     * The options the viewer uses to read the elements of Javadocs. Elements of other categories are not searchable.
+     */
+    public static final JavadocParseOptions PARSE_OPTIONS = JavadocParseOptions.excluding(CATEGORIES_TO_SKIP);
+    private static final Duration PREFETCH_DELAY = Duration.millis(250);
+    private static final int NUMBER_OF_PAGES_TO_PREFETCH = 3;
+    private final JavadocLoader javadocLoader;
+    private final JavadocCache.Listener cacheListener = new JavadocCache.Listener() {
+        @Override
+        public void onJavadocLoaded(JavadocSymbolIndex javadoc) {
+            addEntries(javadoc.getJavadoc());
+        }
+
+        @Override
+        public void onJavadocEvicted(URI uri) {
+            autoCompletionTextField.getSuggestions().remove(uri);
+        }
+    };
+    private final PauseTransition prefetchTransition = new PauseTransition(PREFETCH_DELAY);
+    private JavadocMirror mirror = null;
+    private WebViewTabPane tabs;
+    private List<JavadocEntry> suggestionsToPrefetch = List.of();
     @FXML
     private Button back;
     @FXML
@@ -55,7 +96,55 @@ public class JavadocViewer extends BorderPane {
      * @throws IOException if the window creation fails
      */
     public JavadocViewer(ReadOnlyStringProperty stylesheet, URI... urisToSearch) throws IOException {
-        initUI(stylesheet, Arrays.stream(urisToSearch).toList());
+        this(stylesheet, null, urisToSearch);
+    }
+
+    /**
+     * Create the javadoc viewer. The elements of the Javadocs contained in the provided index bundle
+     * are read from the bundle instead of being parsed, which makes the loading of these Javadocs faster.
+     * Javadocs found in the provided URIs but not present in the bundle are still parsed.
+     *
+     * @param stylesheet a property containing a link to a stylesheet which should
+     *                   be applied to this viewer. Can be null
+     * @param indexBundle the path of an index bundle created with {@link JavadocIndexBundle#write(Path, List)}.
+     *                    Can be null. If the bundle cannot be read, all Javadocs are parsed
+     * @param urisToSearch URIs to search for Javadocs. See {@link JavadocsFinder#findJavadocs(URI...)}
+     * @throws IOException if the window creation fails
+     */
+    public JavadocViewer(ReadOnlyStringProperty stylesheet, Path indexBundle, URI... urisToSearch) throws IOException {
+        this(stylesheet, indexBundle, JavadocsFinder.getDefaultExecutor(), urisToSearch);
+    }
+
+    /**
+     * Create the javadoc viewer, using the provided executor to search for Javadocs, to read their elements
+     * and to prepare them for the search field. Javadocs already loaded by another consumer of the {@link JavadocRegistry}
+     * are shared instead of being read again. See {@link #JavadocViewer(ReadOnlyStringProperty, Path, URI...)} for more information.
+     * <p>
+     * The executor is not shut down by {@link #close()}, but the tasks this viewer submitted to it are interrupted.
+     *
+     * @param stylesheet a property containing a link to a stylesheet which should
+     *                   be applied to this viewer. Can be null
+     * @param indexBundle the path of an index bundle created with {@link JavadocIndexBundle#write(Path, List)}. Can be null
+     * @param executor the executor to use to search for Javadocs, to read their elements and to prepare them
+     * @param urisToSearch URIs to search for Javadocs. See {@link JavadocsFinder#findJavadocs(URI...)}
+     * @throws IOException if the window creation fails
+     */
+    public JavadocViewer(ReadOnlyStringProperty stylesheet, Path indexBundle, Executor executor, URI... urisToSearch) throws IOException {
+        this(stylesheet, new JavadocLoader(executor, indexBundle, PARSE_OPTIONS, Arrays.stream(urisToSearch).toList()));
+    }
+
+    /**
+     * Create the javadoc viewer from Javadocs that may already be loaded.
+     *
+     * @param stylesheet a property containing a link to a stylesheet which should
+     *                   be applied to this viewer. Can be null
+     * @param javadocLoader the loader of the Javadocs to display
+     * @throws IOException if the window creation fails
+     */
+    JavadocViewer(ReadOnlyStringProperty stylesheet, JavadocLoader javadocLoader) throws IOException {
+        this.javadocLoader = javadocLoader;
+
+        initUI(stylesheet);
         setUpListeners();
     }
 
@@ -68,6 +157,138 @@ public class JavadocViewer extends BorderPane {
         autoCompletionTextField.setText(input);
     }
 
+    /**
+     * Get the cache containing the elements of the Javadocs of this viewer. It can be used to set
+     * a heap budget for these elements (see {@link JavadocCache#setMaxBytes(long)}) and to retrieve
+     * eviction statistics.
+     * <p>
+     * When Javadocs are evicted from the cache, they are also removed from the search field, and they
+     * are read again when a search may need them.
+     *
+     * @return the cache containing the elements of the Javadocs of this viewer
+     */
+    public JavadocCache getJavadocCache() {
+        return javadocLoader.getJavadocCache();
+    }
+
+    /**
+     * Get the proportion of searches typed in the search field of this viewer whose results were
+     * retrieved from a cache instead of being computed.
+     *
+     * @return the hit rate of the query cache of the search field, between 0 and 1, or 0 if no search was made
+     */
+    public double getQueryCacheHitRate() {
+        return autoCompletionTextField.getQueryCacheHitRate();
+    }
+
+    /**
+     * Find the Javadoc elements corresponding to a Java symbol, without going through the search field.
+     * <p>
+     * The symbol can be a fully qualified name (for example {@code qupath.lib.images.servers.ImageServer.getPixelType}),
+     * a simple name (for example {@code ImageServer}, {@code ImageServer#getPixelType} or {@code getPixelType}), or
+     * the name of an element as shown in the search field. See {@link JavadocSymbolIndex} for more information.
+     * <p>
+     * A fully qualified symbol is looked up as soon as the Javadocs documenting its package are loaded, without
+     * waiting for other Javadocs. Other symbols may belong to any Javadoc, so the returned CompletableFuture
+     * completes once all Javadocs are loaded. In both cases, the elements of all Javadocs containing the symbol
+     * are returned, and the returned CompletableFuture is already completed if these Javadocs are loaded and
+     * in memory.
+     *
+     * @param symbol the symbol to search for
+     * @return a CompletableFuture with the elements corresponding to the provided symbol. The list is empty
+     * if the symbol wasn't found, and contains more than one element if the symbol is ambiguous
+     */
+    public CompletableFuture<List<JavadocElement>> lookup(String symbol) {
+        return javadocLoader.lookup(symbol);
+    }
+
+    /**
+     * Find the Javadoc elements corresponding to a Java symbol (see {@link #lookup(String)}) and
+     * display the first of them in this viewer.
+     *
+     * @param symbol the symbol to search for
+     * @return a CompletableFuture with the elements corresponding to the provided symbol. The list is empty
+     * if the symbol wasn't found (in which case nothing is displayed), and contains more than one element if
+     * the symbol is ambiguous
+     */
+    public CompletableFuture<List<JavadocElement>> open(String symbol) {
+        return lookup(symbol).thenApply(elements -> {
+            if (!elements.isEmpty()) {
+                if (Platform.isFxApplicationThread()) {
+                    openElement(elements.getFirst());
+                } else {
+                    Platform.runLater(() -> openElement(elements.getFirst()));
+                }
+            }
+            return elements;
+        });
+    }
+
+    /**
+     * Set the mirror through which remote Javadoc pages should be browsed. Pages opened after
+     * this call are served by the provided mirror, which stores them for faster and offline browsing.
+     * <p>
+     * When the results of a search stop changing for a short time, the remote pages of the top results are
+     * prefetched by the mirror (see {@link JavadocMirror#prefetchPages(List)}), so that they are displayed
+     * faster if they are selected. Local pages (in jar files or directories) of the top results are read in
+     * advance whether a mirror is set or not.
+     * <p>
+     * The Javadocs of this viewer are registered with the mirror (see {@link JavadocMirror#register(URI)})
+     * once they are found. The mirror is not closed by {@link #close()}.
+     *
+     * @param mirror the mirror to use, or null to browse remote pages directly
+     */
+    public void setMirror(JavadocMirror mirror) {
+        this.mirror = mirror;
+
+        if (mirror != null) {
+            javadocLoader.getJavadocs().thenAccept(javadocUris -> javadocUris.forEach(mirror::register));
+        }
+    }
+
+    /**
+     * Set the maximum number of tabs that keep their rendered page in memory. Switching to one of these
+     * tabs is instant. When this number is exceeded, the least recently used tab releases its page, which
+     * is loaded again when the tab is selected. Each rendered page can occupy tens of megabytes, so this
+     * bounds the memory used by the tabs.
+     *
+     * @param maxLiveTabs the maximum number of tabs keeping their page in memory. It is 4 by default
+     * @throws IllegalArgumentException if maxLiveTabs is less than 1
+     */
+    public void setMaxLiveTabs(int maxLiveTabs) {
+        tabs.setMaxLiveTabs(maxLiveTabs);
+    }
+
+    /**
+     * Stop loading Javadocs and release the resources used by this viewer: the search for Javadocs is
+     * interrupted, the Javadocs of this viewer are released from the {@link JavadocRegistry}, the elements
+     * of the Javadocs are removed from the search field, and the displayed pages are unloaded.
+     * <p>
+     * This doesn't stop:
+     * <ul>
+     *     <li>The loading of Javadocs shared with other consumers of the {@link JavadocRegistry}, which keeps
+     *     running for them (only loadings used by no other consumer are interrupted). {@link JavadocRegistry#close()}
+     *     cancels all loadings.</li>
+     *     <li>Tasks already running on the executor of this viewer that are not tied to a Javadoc: reading local pages
+     *     in advance, and preparing the elements of a Javadoc for the search field (their result is discarded).</li>
+     *     <li>The prefetching of remote pages by the mirror (see {@link #setMirror(JavadocMirror)}).</li>
+     * </ul>
+     * The executor of this viewer and the mirror are not shut down.
+     * <p>
+     * This viewer must not be used after this call. This function must be called from the JavaFX Application
+     * Thread. Calling it several times has no effect.
+     */
+    public void close() {
+        javadocLoader.getJavadocCache().removeListener(cacheListener);
+        javadocLoader.close();
+        prefetchTransition.stop();
+        suggestionsToPrefetch = List.of();
+
+        autoCompletionTextField.getSuggestions().clear();
+
+        tabs.close();
+    }
+
     @FXML
     private void onBackClicked(ActionEvent ignoredEvent) {
         offset(-1);
@@ -78,13 +299,25 @@ public class JavadocViewer extends BorderPane {
         offset(1);
     }
 
-    private void initUI(ReadOnlyStringProperty stylesheet, List<URI> urisToSearch) throws IOException {
+    @FXML
+    private void onNewTabClicked(ActionEvent ignoredEvent) {
+        // The new tab starts with the page of the current tab, so that it can be compared with another page
+        String location = tabs.getSelectedEngine().getLocation();
+
+        tabs.addTab();
+        if (location != null && !location.isEmpty()) {
+            tabs.load(location);
+        }
+    }
+
+    private void initUI(ReadOnlyStringProperty stylesheet) throws IOException {
         FXMLLoader loader = new FXMLLoader(JavadocViewer.class.getResource("javadoc_viewer.fxml"), resources);
         loader.setRoot(this);
         loader.setController(this);
         loader.load();
 
-        setCenter(webView);
+        tabs = new WebViewTabPane(webView -> setUpWebView(webView, stylesheet), resources.getString("JavadocViewer.newTab"));
+        setCenter(tabs);
 
         this.uris.setCellFactory(col -> new ListCell<>() {
             @Override
@@ -111,20 +344,22 @@ public class JavadocViewer extends BorderPane {
             }
         });
 
-        if (stylesheet != null) {
-            webView.getEngine().userStyleSheetLocationProperty().bind(stylesheet);
+        tabs.loadContent(resources.getString("JavadocViewer.findingJavadocs"));
+        javadocLoader.getJavadocCache().addListener(cacheListener);
+        for (URI uri: javadocLoader.getJavadocCache().getUris()) {
+            if (javadocLoader.getJavadocCache().isLoaded(uri)) {
+                javadocLoader.getJavadocCache().get(uri).ifPresent(javadoc -> addEntries(javadoc.getJavadoc()));
+            }
         }
 
-        webView.getEngine().loadContent(resources.getString("JavadocViewer.findingJavadocs"));
-        JavadocsFinder.findJavadocs(urisToSearch.toArray(new URI[0])).thenAccept(javadocs -> Platform.runLater(() -> {
-            this.uris.getItems().setAll(javadocs.stream()
-                    .map(Javadoc::uri)
+        javadocLoader.getJavadocs().thenAccept(javadocUris -> Platform.runLater(() -> {
+            this.uris.getItems().setAll(javadocUris.stream()
                     .sorted(Comparator.comparing(JavadocViewer::getName))
                     .toList()
             );
 
             if (this.uris.getItems().isEmpty()) {
-                webView.getEngine().loadContent(resources.getString("JavadocViewer.noJavadocs"));
+                tabs.loadContent(resources.getString("JavadocViewer.noJavadocs"));
             } else {
                 this.uris.getSelectionModel().select(this.uris.getItems().stream()
                         .filter(u -> getName(u).toLowerCase().contains("qupath"))
@@ -132,33 +367,52 @@ public class JavadocViewer extends BorderPane {
                         .orElse(this.uris.getItems().getFirst())
                 );
             }
-
-            autoCompletionTextField.getSuggestions().addAll(javadocs.stream()
-                    .map(Javadoc::elements)
-                    .flatMap(List::stream)
-                    .map(javadocElement -> new JavadocEntry(
-                            javadocElement,
-                            () -> {
-                                updateSelectedUri(javadocElement.uri());
-                                webView.getEngine().load(javadocElement.uri().toString());
-                            }
-                    ))
-                    .filter(javadocEntry -> !CATEGORIES_TO_SKIP.contains(javadocEntry.getCategory()))
-                    .toList());
         }));
     }
 
-    private void setUpListeners() {
-        back.disableProperty().bind(webView.getEngine().getHistory().currentIndexProperty().isEqualTo(0));
-        forward.disableProperty().bind(webView.getEngine().getHistory().currentIndexProperty().greaterThanOrEqualTo(
-                Bindings.size(webView.getEngine().getHistory().getEntries()).subtract(1)
-        ));
+    private void addEntries(Javadoc javadoc) {
+        // Entries are created and indexed on the loader executor to keep the JavaFX Application Thread responsive
+        if (!javadocLoader.getJavadocCache().isLoaded(javadoc.uri())) {
+            return;
+        }
 
-        uris.getSelectionModel().selectedItemProperty().addListener((p, o, n) -> {
-            if (n != null && !webView.getEngine().getLocation().equals(n.toString())) {
-                webView.getEngine().load(n.toString());
+        JavadocEntry.createEntries(javadoc.elements(), this::openElement, javadocLoader.getExecutor()).thenAcceptAsync(entries -> {
+            if (javadocLoader.getJavadocCache().isLoaded(javadoc.uri())) {
+                autoCompletionTextField.getSuggestions().put(javadoc.uri(), entries);
+
+                // The Javadoc may have been evicted while entries were added
+                if (!javadocLoader.getJavadocCache().isLoaded(javadoc.uri())) {
+                    autoCompletionTextField.getSuggestions().remove(javadoc.uri());
+                }
             }
-        });
+        }, javadocLoader.getExecutor());
+    }
+
+    private void reloadEvictedJavadocs(String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+
+        for (URI uri: javadocLoader.getJavadocCache().findCandidates(text)) {
+            if (!javadocLoader.getJavadocCache().isLoaded(uri)) {
+                CompletableFuture.runAsync(() -> javadocLoader.getJavadocCache().get(uri), javadocLoader.getExecutor());
+            }
+        }
+    }
+
+    private void openElement(JavadocElement javadocElement) {
+        updateSelectedUri(javadocElement.uri());
+        load(javadocElement.uri());
+    }
+
+    private void load(URI uri) {
+        tabs.load(mirror == null ? uri.toString() : mirror.getLocalUri(uri).toString());
+    }
+
+    private static void setUpWebView(WebView webView, ReadOnlyStringProperty stylesheet) {
+        if (stylesheet != null) {
+            webView.getEngine().userStyleSheetLocationProperty().bind(stylesheet);
+        }
 
         // Sometimes, redirection is not automatically performed
         // (see https://github.com/qupath/qupath/pull/1513#issuecomment-2095553840)
@@ -176,8 +430,59 @@ public class JavadocViewer extends BorderPane {
         });
     }
 
+    private void setUpListeners() {
+        // Evicted Javadocs are only read again if they may contain the searched text
+        autoCompletionTextField.textProperty().addListener((p, o, n) -> reloadEvictedJavadocs(n));
+
+        // Pages of the top results are prefetched once the results stop changing. Remote pages are
+        // prefetched by the mirror (if any), and local pages are read in advance
+        autoCompletionTextField.setOnSuggestionsShown(suggestions -> {
+            suggestionsToPrefetch = suggestions;
+            if (!suggestions.isEmpty()) {
+                prefetchTransition.playFromStart();
+            } else {
+                prefetchTransition.stop();
+            }
+        });
+        prefetchTransition.setOnFinished(event -> {
+            List<URI> uris = suggestionsToPrefetch.stream()
+                    .limit(NUMBER_OF_PAGES_TO_PREFETCH)
+                    .map(entry -> entry.getJavadocElement().uri())
+                    .toList();
+
+            if (mirror != null) {
+                mirror.prefetchPages(uris);
+            }
+            LocalPagePrefetcher.prefetch(uris, javadocLoader.getExecutor());
+        });
+
+        // The history buttons follow the history of the selected tab
+        bindHistoryButtons(tabs.getSelectedEngine());
+        tabs.selectedEngineProperty().addListener((p, o, n) -> {
+            if (n != null) {
+                bindHistoryButtons(n);
+            }
+        });
+
+        uris.getSelectionModel().selectedItemProperty().addListener((p, o, n) -> {
+            String location = tabs.getSelectedEngine().getLocation();
+
+            if (n != null && !location.equals(n.toString()) &&
+                    (mirror == null || !location.equals(mirror.getLocalUri(n).toString()))) {
+                load(n);
+            }
+        });
+    }
+
+    private void bindHistoryButtons(WebEngine engine) {
+        back.disableProperty().bind(engine.getHistory().currentIndexProperty().isEqualTo(0));
+        forward.disableProperty().bind(engine.getHistory().currentIndexProperty().greaterThanOrEqualTo(
+                Bindings.size(engine.getHistory().getEntries()).subtract(1)
+        ));
+    }
+
     private void offset(int offset) {
-        WebHistory history = webView.getEngine().getHistory();
+        WebHistory history = tabs.getSelectedEngine().getHistory();
         int index = history.getCurrentIndex() + offset;
 
         if (index >= 0 && index < history.getEntries().size()) {
@@ -1,27 +1,56 @@
 package qupath.ui.javadocviewer.gui.viewer;
 
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.event.EventHandler;
 import javafx.scene.Scene;
+import javafx.scene.input.InputEvent;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+import qupath.ui.javadocviewer.core.JavadocMirror;
+import qupath.ui.javadocviewer.core.JavadocsFinder;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A command to start a {@link JavadocViewer} in a standalone window.
  * Only one instance of the viewer will be created.
+ * <p>
+ * The viewer can be prepared in the background before the command is run with {@link #warmUp(int)}.
+ * {@link #close()} should be called when the viewer is not needed anymore, to release its resources.
+ * <p>
+ * Functions of this class must be called from the JavaFX Application Thread.
  */
 public class JavadocViewerCommand implements Runnable {
 
     private static final ResourceBundle resources = ResourceBundle.getBundle("qupath.ui.javadocviewer.strings");
+    private static final Duration IDLE_DELAY = Duration.seconds(2);
+    private static final int WARM_UP_KEEP_ALIVE_SECONDS = 30;
     private final Stage owner;
     private final ReadOnlyStringProperty stylesheet;
+    private final Path indexBundle;
+    private final Executor executor;
     private final List<URI> urisToSearch;
     private Stage stage;
     private JavadocViewer javadocViewer;
+    private JavadocLoader warmUpLoader;
+    private ExecutorService warmUpExecutor;
+    private PauseTransition idleTransition;
+    private EventHandler<InputEvent> idleTransitionRestarter;
+    private long heapBudget = Long.MAX_VALUE;
+    private JavadocMirror mirror = null;
 
     /**
      * Create the command. This will not create the viewer until either the command is run or {@link #getJavadocViewer()} is called.
@@ -32,8 +61,40 @@ public class JavadocViewerCommand implements Runnable {
      * @param urisToSearch URIs to search for Javadocs. See {@link JavadocViewer#JavadocViewer(ReadOnlyStringProperty, URI...)}
      */
     public JavadocViewerCommand(Stage owner, ReadOnlyStringProperty stylesheet, URI... urisToSearch) {
+        this(owner, stylesheet, null, urisToSearch);
+    }
+
+    /**
+     * Create the command. This will not create the viewer until either the command is run or {@link #getJavadocViewer()} is called.
+     *
+     * @param owner the stage that should own the viewer window. Can be null
+     * @param stylesheet a property containing a link to a stylesheet which should
+     *                   be applied to the viewer. Can be null
+     * @param indexBundle the path of an index bundle containing prebuilt elements of some Javadocs. Can be null.
+     *                    See {@link JavadocViewer#JavadocViewer(ReadOnlyStringProperty, Path, URI...)}
+     * @param urisToSearch URIs to search for Javadocs. See {@link JavadocViewer#JavadocViewer(ReadOnlyStringProperty, URI...)}
+     */
+    public JavadocViewerCommand(Stage owner, ReadOnlyStringProperty stylesheet, Path indexBundle, URI... urisToSearch) {
+        this(owner, stylesheet, indexBundle, JavadocsFinder.getDefaultExecutor(), urisToSearch);
+    }
+
+    /**
+     * Create the command. This will not create the viewer until either the command is run or {@link #getJavadocViewer()} is called.
+     *
+     * @param owner the stage that should own the viewer window. Can be null
+     * @param stylesheet a property containing a link to a stylesheet which should
+     *                   be applied to the viewer. Can be null
+     * @param indexBundle the path of an index bundle containing prebuilt elements of some Javadocs. Can be null.
+     *                    See {@link JavadocViewer#JavadocViewer(ReadOnlyStringProperty, Path, URI...)}
+     * @param executor the executor the viewer should use to search for Javadocs and read their elements (this
+     *                 is not used by {@link #warmUp(int)}). It is not shut down by {@link #close()}
+     * @param urisToSearch URIs to search for Javadocs. See {@link JavadocViewer#JavadocViewer(ReadOnlyStringProperty, URI...)}
+     */
+    public JavadocViewerCommand(Stage owner, ReadOnlyStringProperty stylesheet, Path indexBundle, Executor executor, URI... urisToSearch) {
         this.owner = owner;
         this.stylesheet = stylesheet;
+        this.indexBundle = indexBundle;
+        this.executor = executor;
         this.urisToSearch = Arrays.stream(urisToSearch).toList();
     }
 
@@ -45,8 +106,16 @@ public class JavadocViewerCommand implements Runnable {
      */
     public JavadocViewer getJavadocViewer() {
         if (javadocViewer == null) {
+            stopIdleTransition();
+
             try {
-                javadocViewer = new JavadocViewer(stylesheet, urisToSearch.toArray(new URI[0]));
+                if (warmUpLoader == null) {
+                    javadocViewer = new JavadocViewer(stylesheet, indexBundle, executor, urisToSearch.toArray(new URI[0]));
+                } else {
+                    javadocViewer = new JavadocViewer(stylesheet, warmUpLoader);
+                }
+                javadocViewer.getJavadocCache().setMaxBytes(heapBudget);
+                javadocViewer.setMirror(mirror);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -54,6 +123,141 @@ public class JavadocViewerCommand implements Runnable {
         return javadocViewer;
     }
 
+    /**
+     * Set the maximum estimated number of bytes the elements of the Javadocs of the viewer should
+     * occupy in memory. This is applied to the viewer when it is created (or immediately if it already
+     * exists) and to the Javadocs loaded by {@link #warmUp(int)}. See {@link JavadocViewer#getJavadocCache()}.
+     *
+     * @param maxBytes the heap budget in bytes. Use {@link Long#MAX_VALUE} to disable eviction
+     * @throws IllegalArgumentException if maxBytes is negative
+     */
+    public void setHeapBudget(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException(String.format("The heap budget (%d) cannot be negative", maxBytes));
+        }
+        heapBudget = maxBytes;
+
+        if (javadocViewer != null) {
+            javadocViewer.getJavadocCache().setMaxBytes(maxBytes);
+        } else if (warmUpLoader != null) {
+            warmUpLoader.getJavadocCache().setMaxBytes(maxBytes);
+        }
+    }
+
+    /**
+     * Set the mirror through which the viewer should browse remote Javadoc pages. This is applied to the
+     * viewer when it is created (or immediately if it already exists). See {@link JavadocViewer#setMirror(JavadocMirror)}.
+     *
+     * @param mirror the mirror to use, or null to browse remote pages directly. It is not closed by {@link #close()}
+     */
+    public void setMirror(JavadocMirror mirror) {
+        this.mirror = mirror;
+
+        if (javadocViewer != null) {
+            javadocViewer.setMirror(mirror);
+        }
+    }
+
+    /**
+     * Start preparing the viewer in the background, so that running this command later is faster.
+     * <p>
+     * The Javadocs are searched, their elements are read and indexed, and the search index of the viewer is
+     * built in the background with at most the provided number of low priority threads. Javadocs whose
+     * loading was already started by another consumer of the {@link qupath.ui.javadocviewer.core.JavadocRegistry}
+     * are shared, and keep loading on the threads of that consumer. Once this is done, the viewer itself is
+     * created on the JavaFX Application Thread once the owner window hasn't received any input event for a
+     * short delay, so that the user interacting with the application is not slowed down. If this command has
+     * no owner, the viewer is created after the delay.
+     * <p>
+     * This function does nothing if the viewer was already created or if a warm-up is already running.
+     *
+     * @param maxThreads the maximum number of threads to use to search for, read and index the Javadocs
+     * @throws IllegalArgumentException if maxThreads is less than 1
+     */
+    public void warmUp(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException(String.format("The number of threads (%d) must be at least 1", maxThreads));
+        }
+        if (javadocViewer != null || warmUpLoader != null) {
+            return;
+        }
+
+        // The executor is kept by the viewer created from the warm-up, so its idle threads time out instead
+        // of the executor being shut down once the Javadocs are loaded
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                maxThreads,
+                maxThreads,
+                WARM_UP_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "javadoc-viewer-warm-up-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        JavadocLoader javadocLoader = new JavadocLoader(executor, indexBundle, JavadocViewer.PARSE_OPTIONS, urisToSearch);
+        javadocLoader.getJavadocCache().setMaxBytes(heapBudget);
+
+        warmUpExecutor = executor;
+        warmUpLoader = javadocLoader;
+        javadocLoader.getJavadocs().whenComplete((result, error) -> {
+            if (error == null) {
+                Platform.runLater(() -> createViewerWhenIdle(javadocLoader));
+            }
+        });
+    }
+
+    /**
+     * Cancel the warm-up started with {@link #warmUp(int)}. The tasks started by the warm-up
+     * are cancelled, which interrupts the threads running them. Javadocs that are shared with
+     * other consumers keep loading for them.
+     * <p>
+     * This function does nothing if the viewer was already created or if no warm-up is running.
+     */
+    public void cancelWarmUp() {
+        if (javadocViewer != null || warmUpLoader == null) {
+            return;
+        }
+
+        stopIdleTransition();
+        warmUpLoader.close();
+        warmUpExecutor.shutdown();
+
+        warmUpLoader = null;
+        warmUpExecutor = null;
+    }
+
+    /**
+     * Close the viewer window and release the resources of the viewer (see {@link JavadocViewer#close()}).
+     * Any running warm-up is cancelled.
+     * <p>
+     * The command can still be run after this call, in which case a new viewer is created.
+     */
+    public void close() {
+        stopIdleTransition();
+
+        if (stage != null) {
+            stage.close();
+            stage = null;
+        }
+        if (javadocViewer != null) {
+            javadocViewer.close();
+            javadocViewer = null;
+        } else if (warmUpLoader != null) {
+            warmUpLoader.close();
+        }
+        if (warmUpExecutor != null) {
+            warmUpExecutor.shutdown();
+        }
+
+        warmUpLoader = null;
+        warmUpExecutor = null;
+    }
+
     @Override
     public void run() {
         if (stage == null) {
@@ -73,4 +277,32 @@ public class JavadocViewerCommand implements Runnable {
         stage.show();
         stage.requestFocus();
     }
+
+    private void createViewerWhenIdle(JavadocLoader javadocLoader) {
+        if (javadocViewer != null || javadocLoader != warmUpLoader) {
+            return;
+        }
+
+        PauseTransition transition = new PauseTransition(IDLE_DELAY);
+        transition.setOnFinished(event -> getJavadocViewer());
+        idleTransition = transition;
+
+        // Each input event received by the owner restarts the delay
+        if (owner != null) {
+            idleTransitionRestarter = event -> transition.playFromStart();
+            owner.addEventFilter(InputEvent.ANY, idleTransitionRestarter);
+        }
+        transition.play();
+    }
+
+    private void stopIdleTransition() {
+        if (idleTransition != null) {
+            idleTransition.stop();
+            idleTransition = null;
+        }
+        if (idleTransitionRestarter != null) {
+            owner.removeEventFilter(InputEvent.ANY, idleTransitionRestarter);
+            idleTransitionRestarter = null;
+        }
+    }
 }
@@ -0,0 +1,65 @@
+package qupath.ui.javadocviewer.gui.viewer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLConnection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Utility functions to prepare pages of local Javadocs (stored in jar files or directories) that are likely
+ * to be browsed soon.
+ * <p>
+ * The web view reads local pages with {@link URLConnection}. Reading a page once in advance with a connection
+ * that uses caches keeps the jar file containing the page open in the cache of jar files of the JDK, so that
+ * its central directory is not read again when the page is displayed, and loads the page from the disk
+ * into the cache of the operating system. Pages of remote Javadocs are prefetched by a
+ * {@link qupath.ui.javadocviewer.core.JavadocMirror} instead.
+ */
+class LocalPagePrefetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalPagePrefetcher.class);
+    private static final List<String> LOCAL_SCHEMES = List.of("jar", "file");
+
+    private LocalPagePrefetcher() {
+        throw new AssertionError("This class is not instantiable.");
+    }
+
+    /**
+     * Read in the background the local pages among the provided URIs. Other URIs are ignored.
+     *
+     * @param uris the URIs of the pages to prefetch
+     * @param executor the executor to use to read the pages
+     */
+    public static void prefetch(List<URI> uris, Executor executor) {
+        for (URI uri: uris.stream().filter(uri -> LOCAL_SCHEMES.contains(uri.getScheme())).map(LocalPagePrefetcher::removeFragment).distinct().toList()) {
+            CompletableFuture.runAsync(() -> read(uri), executor);
+        }
+    }
+
+    private static void read(URI uri) {
+        try {
+            URLConnection connection = uri.toURL().openConnection();
+            connection.setUseCaches(true);
+
+            try (InputStream inputStream = connection.getInputStream()) {
+                inputStream.transferTo(OutputStream.nullOutputStream());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.debug("Cannot prefetch {}", uri, e);
+        }
+    }
+
+    private static URI removeFragment(URI uri) {
+        String link = uri.toString();
+        int fragmentIndex = link.indexOf('#');
+
+        return fragmentIndex == -1 ? uri : URI.create(link.substring(0, fragmentIndex));
+    }
+}
@@ -0,0 +1,248 @@
+package qupath.ui.javadocviewer.gui.viewer;
+
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.web.WebEngine;
+import javafx.scene.web.WebView;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A {@link TabPane} whose tabs display web pages.
+ * <p>
+ * Web views are expensive, so at most {@link #setMaxLiveTabs(int)} tabs have a {@link WebView}. These
+ * tabs keep their rendered page and their history, so switching between them is instant. When a tab without
+ * web view is selected while this maximum is reached, the least recently used tab is suspended: its web view
+ * is given to the selected tab, and the suspended tab only remembers the location of its page (its history
+ * is lost). The page of a suspended tab is loaded again when the tab is selected.
+ * <p>
+ * This bounds the number of web views, not the memory they use: the memory used by a web engine depends on
+ * the page it displays and is not exposed by JavaFX, so it cannot be budgeted. Javadoc pages have similar
+ * sizes, so the number of web views is a reasonable proxy for their memory.
+ * <p>
+ * There is always at least one tab. This class must be used from the JavaFX Application Thread.
+ */
+class WebViewTabPane extends TabPane {
+
+    private static final int DEFAULT_MAX_LIVE_TABS = 4;
+    private static final int HISTORY_SIZE = 100;
+    private final Consumer<WebView> webViewInitializer;
+    private final String defaultTitle;
+    private final Deque<WebViewTab> liveTabs = new ArrayDeque<>();
+    private final ObjectProperty<WebEngine> selectedEngine = new SimpleObjectProperty<>();
+    private int maxLiveTabs = DEFAULT_MAX_LIVE_TABS;
+
+    private class WebViewTab extends Tab {
+
+        private final ChangeListener<String> titleListener = (p, o, n) -> setText(n == null || n.isEmpty() ? defaultTitle : n);
+        private WebView webView = null;
+        private String location = null;
+        private String content = null;
+
+        private WebViewTab() {
+            super(defaultTitle);
+
+            // The web view is released before the tab is removed, because removing the selected tab selects
+            // another tab, which must not suspend a live tab to reuse its web view while this one is freed
+            setOnCloseRequest(event -> {
+                liveTabs.remove(this);
+                WebView releasedWebView = suspend();
+
+                if (releasedWebView != null) {
+                    // Loading a null URL cancels any pending load and releases the displayed page
+                    releasedWebView.getEngine().load(null);
+                }
+            });
+            setOnClosed(event -> {
+                if (getTabs().isEmpty()) {
+                    addTab();
+                }
+            });
+        }
+
+        private void load(String location) {
+            this.location = location;
+            this.content = null;
+
+            if (webView != null) {
+                webView.getEngine().load(location);
+            }
+        }
+
+        private void loadContent(String content) {
+            this.location = null;
+            this.content = content;
+
+            if (webView != null) {
+                webView.getEngine().loadContent(content);
+            }
+        }
+
+        private void resume(WebView webView) {
+            this.webView = webView;
+            webView.getEngine().titleProperty().addListener(titleListener);
+            setContent(webView);
+
+            if (content != null) {
+                webView.getEngine().loadContent(content);
+            } else if (location != null) {
+                webView.getEngine().load(location);
+            }
+        }
+
+        private WebView suspend() {
+            if (webView == null) {
+                return null;
+            }
+
+            String currentLocation = webView.getEngine().getLocation();
+            if (currentLocation != null && !currentLocation.isEmpty()) {
+                location = currentLocation;
+                content = null;
+            }
+
+            WebView suspendedWebView = webView;
+            suspendedWebView.getEngine().titleProperty().removeListener(titleListener);
+            setContent(null);
+            webView = null;
+            return suspendedWebView;
+        }
+    }
+
+    /**
+     * Create the tab pane with one tab.
+     *
+     * @param webViewInitializer a function called each time a web view is created, for example to add listeners
+     *                           to its engine. Web views are reused between tabs, so the function must not depend
+     *                           on a specific tab
+     * @param defaultTitle the title of tabs whose page doesn't have a title
+     */
+    public WebViewTabPane(Consumer<WebView> webViewInitializer, String defaultTitle) {
+        this.webViewInitializer = webViewInitializer;
+        this.defaultTitle = defaultTitle;
+
+        getSelectionModel().selectedItemProperty().addListener((p, o, n) -> {
+            if (n instanceof WebViewTab tab) {
+                makeLive(tab);
+                selectedEngine.set(tab.webView.getEngine());
+            }
+        });
+
+        addTab();
+    }
+
+    /**
+     * Add a new empty tab and select it.
+     */
+    public void addTab() {
+        WebViewTab tab = new WebViewTab();
+
+        getTabs().add(tab);
+        getSelectionModel().select(tab);
+    }
+
+    /**
+     * @return the engine of the selected tab
+     */
+    public WebEngine getSelectedEngine() {
+        return selectedEngine.get();
+    }
+
+    /**
+     * @return a read-only property containing the engine of the selected tab. It changes when another
+     * tab is selected
+     */
+    public ReadOnlyObjectProperty<WebEngine> selectedEngineProperty() {
+        return selectedEngine;
+    }
+
+    /**
+     * Load a page in the selected tab.
+     *
+     * @param location the URL of the page to load
+     */
+    public void load(String location) {
+        getSelectedTab().load(location);
+    }
+
+    /**
+     * Display some HTML content in the selected tab.
+     *
+     * @param content the HTML content to display
+     */
+    public void loadContent(String content) {
+        getSelectedTab().loadContent(content);
+    }
+
+    /**
+     * Set the maximum number of tabs that can have a web view. Tabs exceeding this number are suspended
+     * immediately, starting from the least recently used ones.
+     * <p>
+     * This is a number of web views and not a memory budget (see the description of this class).
+     *
+     * @param maxLiveTabs the maximum number of tabs that can have a web view
+     * @throws IllegalArgumentException if maxLiveTabs is less than 1
+     */
+    public void setMaxLiveTabs(int maxLiveTabs) {
+        if (maxLiveTabs < 1) {
+            throw new IllegalArgumentException(String.format("The maximum number of live tabs (%d) must be at least 1", maxLiveTabs));
+        }
+        this.maxLiveTabs = maxLiveTabs;
+
+        while (liveTabs.size() > maxLiveTabs) {
+            WebView releasedWebView = liveTabs.removeLast().suspend();
+            releasedWebView.getEngine().load(null);
+        }
+    }
+
+    /**
+     * @return the number of tabs that currently have a web view
+     */
+    public int getNumberOfLiveTabs() {
+        return liveTabs.size();
+    }
+
+    /**
+     * Release the web views of all tabs and remove all tabs. This tab pane must not be used after this call.
+     */
+    public void close() {
+        for (WebViewTab tab: List.copyOf(liveTabs)) {
+            tab.suspend().getEngine().load(null);
+        }
+        liveTabs.clear();
+        getTabs().clear();
+    }
+
+    private WebViewTab getSelectedTab() {
+        return (WebViewTab) getSelectionModel().getSelectedItem();
+    }
+
+    private void makeLive(WebViewTab tab) {
+        if (tab.webView == null) {
+            WebView webView;
+
+            if (liveTabs.size() >= maxLiveTabs) {
+                webView = liveTabs.removeLast().suspend();
+
+                // Clear the history of the previous tab
+                webView.getEngine().getHistory().setMaxSize(0);
+                webView.getEngine().getHistory().setMaxSize(HISTORY_SIZE);
+            } else {
+                webView = new WebView();
+                webViewInitializer.accept(webView);
+            }
+
+            tab.resume(webView);
+        } else {
+            liveTabs.remove(tab);
+        }
+        liveTabs.addFirst(tab);
+    }
+}
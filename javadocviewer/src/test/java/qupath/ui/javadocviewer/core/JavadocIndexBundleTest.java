@@ -0,0 +1,94 @@
+package qupath.ui.javadocviewer.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies how a {@link JavadocIndexBundle} checks whether a remote Javadoc was modified, against a
+ * {@link StandInServer} sending the {@code Last-Modified} header of the index page. Only the loopback interface is used.
+ */
+public class JavadocIndexBundleTest {
+
+    private static final String HTML = "text/html; charset=utf-8";
+    private static final String FIRST_MODIFICATION = "Mon, 06 Jan 2025 10:00:00 GMT";
+    private static final String SECOND_MODIFICATION = "Tue, 07 Jan 2025 10:00:00 GMT";
+    private static final Duration CHECK_TIMEOUT = Duration.ofSeconds(5);
+    private static final int MAX_READ_MILLIS = 1000;
+    @TempDir
+    Path bundleDirectory;
+
+    @Test
+    void Check_Remote_Javadoc_Read_Without_Waiting_For_Server() throws Exception {
+        try (StandInServer server = new StandInServer()) {
+            AtomicBoolean bundleWritten = new AtomicBoolean(false);
+            CountDownLatch checkEnd = new CountDownLatch(1);
+            server.serve("/docs/index.html", exchange -> {
+                if (bundleWritten.get()) {
+                    checkEnd.await();
+                }
+                exchange.getResponseHeaders().set("Last-Modified", FIRST_MODIFICATION);
+                StandInServer.send(exchange, 200, HTML, new byte[0]);
+            });
+            URI index = server.getUri("/docs/index.html");
+            JavadocIndexBundle bundle = writeBundle(index);
+            bundleWritten.set(true);
+
+            try {
+                long start = System.nanoTime();
+                Optional<Javadoc> javadoc = bundle.getJavadoc(index);
+
+                assertTrue(javadoc.isPresent());
+                assertTrue((System.nanoTime() - start) / 1e6 < MAX_READ_MILLIS);
+            } finally {
+                checkEnd.countDown();
+            }
+        }
+    }
+
+    @Test
+    void Check_Modified_Remote_Javadoc_Not_Read_Once_Checked() throws Exception {
+        try (StandInServer server = new StandInServer()) {
+            AtomicReference<String> lastModified = new AtomicReference<>(FIRST_MODIFICATION);
+            server.serve("/docs/index.html", exchange -> {
+                exchange.getResponseHeaders().set("Last-Modified", lastModified.get());
+                StandInServer.send(exchange, 200, HTML, new byte[0]);
+            });
+            URI index = server.getUri("/docs/index.html");
+            JavadocIndexBundle bundle = writeBundle(index);
+            lastModified.set(SECOND_MODIFICATION);
+
+            assertTrue(bundle.getJavadoc(index).isPresent());
+            long deadline = System.nanoTime() + CHECK_TIMEOUT.toNanos();
+            Optional<Javadoc> javadoc = bundle.getJavadoc(index);
+            while (javadoc.isPresent() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+                javadoc = bundle.getJavadoc(index);
+            }
+
+            assertFalse(javadoc.isPresent());
+            assertEquals(2, server.getRequestCount("/docs/index.html"));
+        }
+    }
+
+    private JavadocIndexBundle writeBundle(URI index) throws Exception {
+        Path path = bundleDirectory.resolve("bundle.bin");
+        JavadocIndexBundle.write(path, List.of(new Javadoc(
+                index,
+                List.of(new JavadocElement(index.resolve("A.html"), "A", "Class"))
+        )));
+        return JavadocIndexBundle.read(path);
+    }
+}
@@ -0,0 +1,181 @@
+package qupath.ui.javadocviewer.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies the behavior of {@link JavadocMirror} against a {@link StandInServer}: only files of registered
+ * Javadocs are served, files are served from memory once fetched, and prefetched archives contain the
+ * whole site of a Javadoc but stop growing when they reach their maximum size. Only the loopback interface is used.
+ */
+public class JavadocMirrorTest {
+
+    private static final String HTML = "text/html; charset=utf-8";
+    private static final long MAX_BYTES = 1 << 20;
+    private static final int MAX_ARCHIVE_FILES = 20;
+    private static final HttpClient client = HttpClient.newHttpClient();
+    @TempDir
+    Path mirrorDirectory;
+
+    @Test
+    void Check_Unregistered_Javadoc_Not_Converted_To_Local_Uri() throws Exception {
+        try (StandInServer server = createServer(); JavadocMirror mirror = new JavadocMirror(mirrorDirectory, MAX_BYTES)) {
+            URI index = server.getUri("/docs/index.html");
+
+            assertEquals(index, mirror.getLocalUri(index));
+        }
+    }
+
+    @Test
+    void Check_File_Of_Unregistered_Javadoc_Refused() throws Exception {
+        try (StandInServer server = createServer(); JavadocMirror mirror = new JavadocMirror(mirrorDirectory, MAX_BYTES)) {
+            URI index = server.getUri("/docs/index.html");
+
+            assertEquals(403, get(toLocalUri(mirror, index)).statusCode());
+            assertEquals(0, server.getRequestCount("/docs/index.html"));
+        }
+    }
+
+    @Test
+    void Check_File_Of_Registered_Javadoc_Served() throws Exception {
+        try (StandInServer server = createServer(); JavadocMirror mirror = new JavadocMirror(mirrorDirectory, MAX_BYTES)) {
+            URI index = server.getUri("/docs/index.html");
+            mirror.register(index);
+
+            HttpResponse<String> response = get(mirror.getLocalUri(index));
+
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().contains("a.html"));
+        }
+    }
+
+    @Test
+    void Check_Served_File_Fetched_Once() throws Exception {
+        try (StandInServer server = createServer(); JavadocMirror mirror = new JavadocMirror(mirrorDirectory, MAX_BYTES)) {
+            URI index = server.getUri("/docs/index.html");
+            mirror.register(index);
+
+            get(mirror.getLocalUri(index));
+            get(mirror.getLocalUri(index));
+
+            assertEquals(1, server.getRequestCount("/docs/index.html"));
+        }
+    }
+
+    @Test
+    void Check_Files_Outside_Javadoc_Refused() throws Exception {
+        try (StandInServer server = createServer(); JavadocMirror mirror = new JavadocMirror(mirrorDirectory, MAX_BYTES)) {
+            mirror.register(server.getUri("/docs/index.html"));
+
+            assertEquals(403, get(toLocalUri(mirror, server.getUri("/secret.txt"))).statusCode());
+            assertEquals(403, get(toLocalUri(mirror, server.getUri("/docs/../secret.txt"))).statusCode());
+            assertEquals(403, get(toLocalUri(mirror, URI.create("http://example.invalid/docs/index.html"))).statusCode());
+            assertEquals(0, server.getRequestCount("/secret.txt"));
+        }
+    }
+
+    @Test
+    void Check_File_Outside_Javadoc_Never_Prefetched() throws Exception {
+        try (StandInServer server = createServer(); JavadocMirror mirror = new JavadocMirror(mirrorDirectory, MAX_BYTES)) {
+            mirror.register(server.getUri("/docs/index.html"));
+
+            mirror.prefetchPages(List.of(server.getUri("/secret.txt")));
+
+            assertEquals(0, server.getRequestCount("/secret.txt"));
+        }
+    }
+
+    @Test
+    void Check_Prefetched_Archive_Contains_All_Files_Of_Javadoc() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (StandInServer server = createServer(); JavadocMirror mirror = new JavadocMirror(mirrorDirectory, MAX_BYTES)) {
+            Path archive = mirror.prefetch(server.getUri("/docs/index.html"), executor).get();
+
+            try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+                assertEquals(5, zipFile.size());
+                assertNotNull(zipFile.getEntry("b.html"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void Check_Prefetch_Of_Unbounded_Site_Stops_At_Max_Size() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (StandInServer server = createServer(); JavadocMirror mirror = new JavadocMirror(mirrorDirectory, MAX_BYTES)) {
+            mirror.setMaxArchiveSize(MAX_ARCHIVE_FILES, MAX_BYTES);
+            Path archive = mirror.prefetch(server.getUri("/docs/index.html"), executor).get();
+
+            assertThrows(ExecutionException.class, () -> mirror.prefetch(server.getUri("/loop/page-0.html"), executor).get());
+            assertTrue(server.getRequestCount() < 100);
+            try (Stream<Path> archives = Files.list(archive.getParent())) {
+                assertEquals(List.of(archive), archives.toList());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static StandInServer createServer() throws Exception {
+        StandInServer server = new StandInServer();
+
+        server.serveFile("/docs/index.html", HTML, """
+                <link rel="stylesheet" href="style.css">
+                <a href="a.html">A</a> <a href="../secret.txt">Secret</a>
+                """);
+        server.serveFile("/docs/index-all.html", HTML, "<a href=\"b.html#member\">B</a>");
+        server.serveFile("/docs/a.html", HTML, "<a href=\"index.html\">Index</a>");
+        server.serveFile("/docs/b.html", HTML, "<a href=\"a.html\">A</a>");
+        server.serveFile("/docs/style.css", "text/css; charset=utf-8", "body { color: black; }");
+        server.serveFile("/secret.txt", "text/plain", "secret");
+
+        // Each page of this site links to a new page
+        server.serve("/loop/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            int pageNumber = Integer.parseInt(path.substring(path.lastIndexOf('-') + 1, path.lastIndexOf('.')));
+
+            StandInServer.send(exchange, 200, HTML, String.format("<a href=\"page-%d.html\">Next</a>", pageNumber + 1).getBytes(StandardCharsets.UTF_8));
+        });
+        return server;
+    }
+
+    private static URI toLocalUri(JavadocMirror mirror, URI remoteUri) {
+        // The local URI is built by hand, as a client of the local server could do, because the mirror
+        // only converts URIs of registered Javadocs. The address of the server is found with a dummy Javadoc
+        URI dummyJavadoc = URI.create("http://localhost/mirror-test/index.html");
+        mirror.register(dummyJavadoc);
+        String dummyLocalUri = mirror.getLocalUri(dummyJavadoc).toString();
+
+        return URI.create(String.format(
+                "%s/%s/%s%s",
+                dummyLocalUri.substring(0, dummyLocalUri.indexOf("/http/")),
+                remoteUri.getScheme(),
+                remoteUri.getRawAuthority(),
+                remoteUri.getRawPath()
+        ));
+    }
+
+    private static HttpResponse<String> get(URI uri) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,228 @@
+package qupath.ui.javadocviewer.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies the behavior of {@link MirroredFetcher} against {@link StandInServer}s playing the role of
+ * mirrors. Each test uses its own servers (and therefore its own hosts), so that the latencies and failures
+ * of a test don't affect the others. Only the loopback interface is used.
+ */
+public class MirroredFetcherTest {
+
+    private static final String HTML = "text/html; charset=utf-8";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(5);
+    private static final int MAX_RETRIES = 2;
+    private static final Duration INITIAL_BACKOFF = Duration.ofMillis(20);
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final Duration OPEN_DURATION = Duration.ofMillis(500);
+    private static final int WARM_UP_REQUESTS = 10;
+    private static final int SLOW_HEADERS_MILLIS = 1000;
+    private static final int BODY_CHUNKS = 20;
+    private static final int BODY_CHUNK_MILLIS = 25;
+
+    @Test
+    void Check_Large_Page_Downloaded_Slowly_Not_Hedged() throws Exception {
+        try (StandInServer primary = new StandInServer(); StandInServer mirror = new StandInServer()) {
+            MirroredFetcher fetcher = createFetcher();
+            fetcher.addMirrors(primary.getUri("/docs/index.html"), List.of(mirror.getUri("/docs/index.html")));
+            for (StandInServer server: List.of(primary, mirror)) {
+                server.serveFile("/docs/small.html", HTML, "small");
+                server.serve("/docs/large.html", MirroredFetcherTest::sendSlowBody);
+            }
+            giveShortLatency(fetcher, primary);
+
+            HttpResponse<String> response = fetcher.fetch(primary.getUri("/docs/large.html"), HttpResponse.BodyHandlers.ofString()).get();
+
+            assertEquals(primary.getUri("/").getPort(), response.uri().getPort());
+            assertEquals(0, fetcher.getHedgeCount());
+            assertEquals(0, mirror.getRequestCount("/docs/large.html"));
+        }
+    }
+
+    @Test
+    void Check_Page_With_Late_Headers_Hedged_To_Mirror() throws Exception {
+        try (StandInServer primary = new StandInServer(); StandInServer mirror = new StandInServer()) {
+            MirroredFetcher fetcher = createFetcher();
+            fetcher.addMirrors(primary.getUri("/docs/index.html"), List.of(mirror.getUri("/docs/index.html")));
+            primary.serveFile("/docs/small.html", HTML, "small");
+            primary.serve("/docs/slow.html", exchange -> {
+                Thread.sleep(SLOW_HEADERS_MILLIS);
+                StandInServer.send(exchange, 200, HTML, "primary".getBytes(StandardCharsets.UTF_8));
+            });
+            mirror.serveFile("/docs/slow.html", HTML, "mirror");
+            giveShortLatency(fetcher, primary);
+
+            long start = System.nanoTime();
+            HttpResponse<String> response = fetcher.fetch(primary.getUri("/docs/slow.html"), HttpResponse.BodyHandlers.ofString()).get();
+
+            assertEquals("mirror", response.body());
+            assertEquals(1, fetcher.getHedgeCount());
+            assertTrue((System.nanoTime() - start) / 1e6 < SLOW_HEADERS_MILLIS);
+        }
+    }
+
+    @Test
+    void Check_Failed_Request_Goes_To_Next_Mirror() throws Exception {
+        try (StandInServer primary = new StandInServer(); StandInServer mirror = new StandInServer()) {
+            MirroredFetcher fetcher = createFetcher();
+            fetcher.addMirrors(primary.getUri("/docs/index.html"), List.of(mirror.getUri("/docs/index.html")));
+            primary.serve("/docs/page.html", exchange -> StandInServer.send(exchange, 500, HTML, new byte[0]));
+            mirror.serveFile("/docs/page.html", HTML, "mirror");
+
+            HttpResponse<String> response = fetcher.fetch(primary.getUri("/docs/page.html"), HttpResponse.BodyHandlers.ofString()).get();
+
+            assertEquals("mirror", response.body());
+            assertEquals(0, fetcher.getRetryCount());
+        }
+    }
+
+    @Test
+    void Check_Missing_Page_Fails_Without_Retry() throws Exception {
+        try (StandInServer primary = new StandInServer(); StandInServer mirror = new StandInServer()) {
+            MirroredFetcher fetcher = createFetcher();
+            fetcher.addMirrors(primary.getUri("/docs/index.html"), List.of(mirror.getUri("/docs/index.html")));
+
+            assertThrows(
+                    ExecutionException.class,
+                    () -> fetcher.fetch(primary.getUri("/docs/missing.html"), HttpResponse.BodyHandlers.ofString()).get()
+            );
+            assertEquals(0, fetcher.getRetryCount());
+        }
+    }
+
+    @Test
+    void Check_Temporary_Failures_Retried() throws Exception {
+        try (StandInServer server = new StandInServer()) {
+            MirroredFetcher fetcher = createFetcher();
+            AtomicInteger remainingFailures = new AtomicInteger(MAX_RETRIES);
+            server.serve("/docs/flaky.html", exchange -> StandInServer.send(
+                    exchange,
+                    remainingFailures.getAndDecrement() > 0 ? 503 : 200,
+                    HTML,
+                    "flaky".getBytes(StandardCharsets.UTF_8)
+            ));
+
+            HttpResponse<String> response = fetcher.fetch(server.getUri("/docs/flaky.html"), HttpResponse.BodyHandlers.ofString()).get();
+
+            assertEquals(200, response.statusCode());
+            assertEquals(MAX_RETRIES, fetcher.getRetryCount());
+            assertEquals(MAX_RETRIES + 1, server.getRequestCount("/docs/flaky.html"));
+        }
+    }
+
+    @Test
+    void Check_Host_Failing_Repeatedly_Avoided() throws Exception {
+        try (StandInServer server = new StandInServer()) {
+            MirroredFetcher fetcher = createFetcher();
+            server.serve("/docs/page.html", exchange -> StandInServer.send(exchange, 500, HTML, new byte[0]));
+            URI page = server.getUri("/docs/page.html");
+            assertThrows(ExecutionException.class, () -> fetcher.fetch(page, HttpResponse.BodyHandlers.discarding()).get());
+            int requestCount = server.getRequestCount();
+
+            assertFalse(fetcher.isHostAvailable(page));
+            assertThrows(ExecutionException.class, () -> fetcher.fetch(page, HttpResponse.BodyHandlers.discarding()).get());
+            assertEquals(requestCount, server.getRequestCount());
+        }
+    }
+
+    @Test
+    void Check_Avoided_Host_Used_Again_After_Successful_Trial() throws Exception {
+        try (StandInServer server = new StandInServer()) {
+            MirroredFetcher fetcher = createFetcher();
+            AtomicBoolean down = new AtomicBoolean(true);
+            server.serve("/docs/page.html", exchange -> StandInServer.send(exchange, down.get() ? 500 : 200, HTML, new byte[0]));
+            URI page = server.getUri("/docs/page.html");
+            assertThrows(ExecutionException.class, () -> fetcher.fetch(page, HttpResponse.BodyHandlers.discarding()).get());
+
+            Thread.sleep(OPEN_DURATION.toMillis());
+            down.set(false);
+            HttpResponse<Void> response = fetcher.fetch(page, HttpResponse.BodyHandlers.discarding()).get();
+
+            assertEquals(200, response.statusCode());
+            assertTrue(fetcher.isHostAvailable(page));
+        }
+    }
+
+    @Test
+    void Check_Request_Ending_During_Trial_Does_Not_Allow_Second_Trial() throws Exception {
+        try (StandInServer server = new StandInServer()) {
+            MirroredFetcher fetcher = createFetcher();
+            CountDownLatch regularRequestEnd = new CountDownLatch(1);
+            CountDownLatch trialRequestEnd = new CountDownLatch(1);
+            server.serve("/docs/regular.html", exchange -> {
+                regularRequestEnd.await();
+                StandInServer.send(exchange, 404, HTML, new byte[0]);
+            });
+            server.serve("/docs/failing.html", exchange -> StandInServer.send(exchange, 500, HTML, new byte[0]));
+            server.serve("/docs/trial.html", exchange -> {
+                trialRequestEnd.await();
+                StandInServer.send(exchange, 200, HTML, new byte[0]);
+            });
+            server.serveFile("/docs/other.html", HTML, "other");
+
+            // A request is admitted while the circuit is closed, and then the circuit opens
+            CompletableFuture<HttpResponse<Void>> regularRequest = fetcher.fetch(server.getUri("/docs/regular.html"), HttpResponse.BodyHandlers.discarding());
+            waitForRequest(server, "/docs/regular.html");
+            assertThrows(ExecutionException.class, () -> fetcher.fetch(server.getUri("/docs/failing.html"), HttpResponse.BodyHandlers.discarding()).get());
+            Thread.sleep(OPEN_DURATION.toMillis());
+            CompletableFuture<HttpResponse<Void>> trialRequest = fetcher.fetch(server.getUri("/docs/trial.html"), HttpResponse.BodyHandlers.discarding());
+            waitForRequest(server, "/docs/trial.html");
+
+            regularRequestEnd.countDown();
+            assertThrows(ExecutionException.class, regularRequest::get);
+
+            assertThrows(ExecutionException.class, () -> fetcher.fetch(server.getUri("/docs/other.html"), HttpResponse.BodyHandlers.discarding()).get());
+            assertEquals(0, server.getRequestCount("/docs/other.html"));
+            trialRequestEnd.countDown();
+            assertEquals(200, trialRequest.get().statusCode());
+        }
+    }
+
+    private static MirroredFetcher createFetcher() {
+        return new MirroredFetcher(REQUEST_TIMEOUT, MAX_RETRIES, INITIAL_BACKOFF, FAILURE_THRESHOLD, OPEN_DURATION);
+    }
+
+    private static void giveShortLatency(MirroredFetcher fetcher, StandInServer server) throws Exception {
+        // Small pages give a short usual latency to the server
+        for (int i=0; i<WARM_UP_REQUESTS; i++) {
+            fetcher.fetch(server.getUri("/docs/small.html"), HttpResponse.BodyHandlers.ofString()).get();
+        }
+    }
+
+    private static void waitForRequest(StandInServer server, String path) throws InterruptedException {
+        while (server.getRequestCount(path) == 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void sendSlowBody(HttpExchange exchange) throws Exception {
+        // The headers are sent immediately, but the body takes much longer than the usual latency
+        exchange.getResponseHeaders().set("Content-Type", HTML);
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            for (int i=0; i<BODY_CHUNKS; i++) {
+                outputStream.write("<p>large page</p>".repeat(100).getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+                Thread.sleep(BODY_CHUNK_MILLIS);
+            }
+        }
+    }
+}
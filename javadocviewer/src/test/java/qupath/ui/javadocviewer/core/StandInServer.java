@@ -0,0 +1,142 @@
+package qupath.ui.javadocviewer.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local HTTP server standing in for a remote Javadoc server, so that the networking classes of the viewer
+ * can be verified without depending on the Internet.
+ * <p>
+ * The server listens on the loopback interface. The response to a request is written by the {@link Responder}
+ * registered for the longest registered prefix of the requested path, and requests without responder get a
+ * 404 status. The number of requests received for each path is recorded.
+ */
+class StandInServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "stand-in-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+
+    /**
+     * A function writing the response to a request.
+     */
+    @FunctionalInterface
+    public interface Responder {
+
+        /**
+         * Write the response to a request.
+         *
+         * @param exchange the exchange of the request. It is closed once this function returns
+         * @throws Exception if the response cannot be written
+         */
+        void respond(HttpExchange exchange) throws Exception;
+    }
+
+    /**
+     * Create and start the server on a free port of the loopback interface.
+     *
+     * @throws IOException if the server cannot be started
+     */
+    public StandInServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Answer the requests whose path starts with some prefix.
+     *
+     * @param pathPrefix the prefix of the paths to answer, starting with '/'
+     * @param responder the function writing the responses
+     */
+    public void serve(String pathPrefix, Responder responder) {
+        server.createContext(pathPrefix, exchange -> {
+            requestCounts.computeIfAbsent(exchange.getRequestURI().getPath(), path -> new AtomicInteger()).incrementAndGet();
+
+            try {
+                responder.respond(exchange);
+            } catch (Exception e) {
+                // The client sees the connection being closed
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    /**
+     * Answer the requests of a path with a fixed text file.
+     *
+     * @param path the path of the file, starting with '/'
+     * @param contentType the MIME type of the file
+     * @param content the content of the file
+     */
+    public void serveFile(String path, String contentType, String content) {
+        serve(path, exchange -> send(exchange, 200, contentType, content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @param path the path of a file on this server, starting with '/'
+     * @return the URI of the provided file on this server
+     */
+    public URI getUri(String path) {
+        return URI.create(String.format("http://%s:%d%s", server.getAddress().getHostString(), server.getAddress().getPort(), path));
+    }
+
+    /**
+     * @param path a path of this server, starting with '/'
+     * @return the number of requests received for the provided path
+     */
+    public int getRequestCount(String path) {
+        AtomicInteger count = requestCounts.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return the total number of requests received by this server
+     */
+    public int getRequestCount() {
+        return requestCounts.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    /**
+     * Stop the server.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Send a complete response.
+     *
+     * @param exchange the exchange of the request to answer
+     * @param status the status of the response
+     * @param contentType the MIME type of the body
+     * @param body the body of the response
+     * @throws IOException if the response cannot be sent
+     */
+    public static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+}